@@ -195,6 +195,46 @@ public class ArgumentMap {
     }
   }
 
+  /**
+   * Returns the value for the specified flag as a double value. If the flag
+   * is missing or the flag does not have a value, returns the specified
+   * default value instead.
+   *
+   * @param flag
+   *            flag to get value for
+   * @param defaultValue
+   *            value to return if the flag or value is missing
+   * @return value of flag as a double, or the default value if the flag or
+   *         value is missing
+   */
+  public double getDouble(String flag, double defaultValue) {
+    try {
+      return Double.parseDouble(map.get(flag));
+    } catch (NumberFormatException | NullPointerException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Returns the value for the specified flag as a long value. If the flag is
+   * missing or the flag does not have a value, returns the specified default
+   * value instead.
+   *
+   * @param flag
+   *            flag to get value for
+   * @param defaultValue
+   *            value to return if the flag or value is missing
+   * @return value of flag as a long, or the default value if the flag or
+   *         value is missing
+   */
+  public long getLong(String flag, long defaultValue) {
+    try {
+      return Long.parseLong(map.get(flag));
+    } catch (NumberFormatException | NullPointerException e) {
+      return defaultValue;
+    }
+  }
+
   @Override
   public String toString() {
     return map.toString();
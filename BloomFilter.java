@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over 64-bit fingerprints. It can say for certain
+ * that a fingerprint was never added, but may report a fingerprint as present
+ * when it was not, at roughly the false-positive rate it was sized for.
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long numBits;
+	private final int numHashes;
+
+	/**
+	 * Initializes a Bloom filter sized for the expected number of insertions
+	 * at the specified false-positive rate.
+	 *
+	 * @param expected
+	 *            expected number of fingerprints
+	 * @param fpp
+	 *            desired false-positive rate, between 0 and 1
+	 */
+	public BloomFilter(long expected, double fpp) {
+		if (fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False-positive rate must be between 0 and 1.");
+		}
+		expected = Math.max(expected, 1);
+
+		long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.min(Integer.MAX_VALUE - 8, (Math.max(m, 64) + 63) / 64);
+
+		this.bits = new AtomicLongArray(words);
+		this.numBits = (long) words * 64;
+		this.numHashes = Math.max(1, (int) Math.round((double) m / expected * Math.log(2)));
+	}
+
+	/**
+	 * Adds the fingerprint to the filter.
+	 *
+	 * @param fingerprint
+	 *            64-bit fingerprint
+	 */
+	public void put(long fingerprint) {
+		long hash = fingerprint;
+		long step = (fingerprint >>> 32) | 1;
+		for (int i = 0; i < numHashes; i++, hash += step) {
+			long bit = Long.remainderUnsigned(hash, numBits);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+
+			long old;
+			while (((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+				// retries until the bit is set
+			}
+		}
+	}
+
+	/**
+	 * Checks if the fingerprint may have been added to the filter.
+	 *
+	 * @param fingerprint
+	 *            64-bit fingerprint
+	 * @return false if the fingerprint was definitely never added
+	 */
+	public boolean mightContain(long fingerprint) {
+		long hash = fingerprint;
+		long step = (fingerprint >>> 32) | 1;
+		for (int i = 0; i < numHashes; i++, hash += step) {
+			long bit = Long.remainderUnsigned(hash, numBits);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the size of the filter in bytes.
+	 *
+	 * @return number of bytes used by the bit array
+	 */
+	public long sizeInBytes() {
+		return numBits / 8;
+	}
+
+	/**
+	 * Returns the number of hash functions used per fingerprint.
+	 *
+	 * @return number of hash functions
+	 */
+	public int numHashes() {
+		return numHashes;
+	}
+}
@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Completes prefixes to the words of an index most likely to be wanted, for
+ * type-ahead search. The words are kept in a compressed trie, where only
+ * branching points get a node, and every node holds the words below it with
+ * the highest document frequency. Completing a prefix is a walk down the trie
+ * followed by reading one list, so it takes microseconds no matter how many
+ * words start with the prefix.
+ *
+ * Suggestions are words rather than indexed terms. When the words were stemmed
+ * while indexing, each stem is suggested as the shortest word indexed for it,
+ * which searches for the same stem. Stopwords are never suggested, since they
+ * are not indexed and are dropped from queries.
+ *
+ * A completion index is a snapshot of the index it was built from, and
+ * remembers the version of the index it saw, so a caller can tell when to
+ * build a new one.
+ */
+public class CompletionIndex {
+
+	/** Default number of completions kept for each prefix. */
+	public static final int DEFAULT_SIZE = 10;
+
+	private final long version;
+	private final int size;
+	private final String[] terms;
+	private final int[] frequencies;
+	private final Node root;
+
+	/**
+	 * Builds a completion index keeping the default number of completions for
+	 * each prefix.
+	 *
+	 * @param index
+	 *            index to take the words from
+	 */
+	public CompletionIndex(InvertedIndex index) {
+		this(index, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Builds a completion index.
+	 *
+	 * @param index
+	 *            index to take the words from
+	 * @param size
+	 *            number of completions kept for each prefix
+	 */
+	public CompletionIndex(InvertedIndex index, int size) {
+		// read before the words, so a change made while building is seen later
+		this.version = index.version();
+		this.size = Math.max(1, size);
+
+		TreeMap<String, Integer> words = new TreeMap<>();
+		for (Map.Entry<String, Integer> entry : index.documentFrequencies().entrySet()) {
+			words.merge(WordParser.surface(entry.getKey()), entry.getValue(), Math::max);
+		}
+		this.terms = new String[words.size()];
+		this.frequencies = new int[words.size()];
+		int i = 0;
+		for (Map.Entry<String, Integer> entry : words.entrySet()) {
+			terms[i] = entry.getKey();
+			frequencies[i] = entry.getValue();
+			i++;
+		}
+
+		this.root = terms.length > 0 ? build(0, terms.length) : null;
+	}
+
+	/**
+	 * Returns the words that start with a prefix, most frequent first.
+	 *
+	 * @param prefix
+	 *            cleaned prefix to complete
+	 * @param k
+	 *            most completions to return
+	 * @return completions, in order of decreasing document frequency
+	 */
+	public ArrayList<String> suggest(String prefix, int k) {
+		ArrayList<String> completions = new ArrayList<>();
+		Node node = find(prefix);
+		if (node != null) {
+			for (int i = 0; i < node.top.length && i < k; i++) {
+				completions.add(terms[node.top[i]]);
+			}
+		}
+		return completions;
+	}
+
+	/**
+	 * Returns the version of the index this was built from.
+	 *
+	 * @return version of the index when it was read
+	 * @see InvertedIndex#version()
+	 */
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of completions kept for each prefix.
+	 *
+	 * @return most completions returned for any prefix
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of words that can be completed.
+	 *
+	 * @return number of words
+	 */
+	public int words() {
+		return terms.length;
+	}
+
+	/**
+	 * Finds the highest node whose words all start with a prefix.
+	 *
+	 * @param prefix
+	 *            prefix to find
+	 * @return node, or null if no word starts with the prefix
+	 */
+	private Node find(String prefix) {
+		Node node = root;
+		while (node != null) {
+			String term = terms[node.first];
+			if (prefix.length() <= node.depth) {
+				return term.startsWith(prefix) ? node : null;
+			}
+			if (!prefix.regionMatches(0, term, 0, node.depth)) {
+				return null;
+			}
+			int child = Arrays.binarySearch(node.keys, prefix.charAt(node.depth));
+			node = child >= 0 ? node.children[child] : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Builds the node for a range of sorted words that share a prefix, and
+	 * everything below it. The words of the range share exactly as long a
+	 * prefix as the first and last of them do.
+	 *
+	 * @param from
+	 *            index of the first word of the range
+	 * @param to
+	 *            index just past the last word of the range
+	 * @return node for the range
+	 */
+	private Node build(int from, int to) {
+		String first = terms[from];
+		int depth = from + 1 == to ? first.length() : commonPrefix(first, terms[to - 1]);
+
+		// the shared prefix itself is a word only if it is the first word
+		int start = first.length() == depth ? from + 1 : from;
+
+		ArrayList<Node> children = new ArrayList<>();
+		int i = start;
+		while (i < to) {
+			char c = terms[i].charAt(depth);
+			int j = i + 1;
+			while (j < to && terms[j].charAt(depth) == c) {
+				j++;
+			}
+			children.add(build(i, j));
+			i = j;
+		}
+
+		Node node = new Node(from, depth, children.size());
+		int candidates = start > from ? 1 : 0;
+		for (int c = 0; c < node.children.length; c++) {
+			node.children[c] = children.get(c);
+			node.keys[c] = terms[node.children[c].first].charAt(depth);
+			candidates += node.children[c].top.length;
+		}
+		node.top = top(node, start > from ? from : -1, Math.min(size, candidates));
+		return node;
+	}
+
+	/**
+	 * Chooses the words with the highest document frequency from a node's own
+	 * word and the choices of its children, breaking ties alphabetically.
+	 * Since each child's choices are already in order, they are merged rather
+	 * than sorted.
+	 *
+	 * @param node
+	 *            node with its children built
+	 * @param own
+	 *            index of the word ending at the node, or -1 if there is none
+	 * @param count
+	 *            number of words to choose
+	 * @return indexes of the chosen words, best first
+	 */
+	private int[] top(Node node, int own, int count) {
+		int[] top = new int[count];
+		int[] next = new int[node.children.length];
+		boolean ownTaken = own < 0;
+
+		for (int i = 0; i < count; i++) {
+			int best = ownTaken ? -1 : own;
+			int bestChild = -1;
+			for (int c = 0; c < node.children.length; c++) {
+				int[] choices = node.children[c].top;
+				if (next[c] < choices.length && (best < 0 || better(choices[next[c]], best))) {
+					best = choices[next[c]];
+					bestChild = c;
+				}
+			}
+
+			top[i] = best;
+			if (bestChild >= 0) {
+				next[bestChild]++;
+			} else {
+				ownTaken = true;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Checks if one word should be suggested before another.
+	 *
+	 * @param a
+	 *            index of the first word
+	 * @param b
+	 *            index of the second word
+	 * @return true if the first word has a higher document frequency, or the
+	 *         same frequency and comes first alphabetically
+	 */
+	private boolean better(int a, int b) {
+		return frequencies[a] != frequencies[b] ? frequencies[a] > frequencies[b] : a < b;
+	}
+
+	/**
+	 * Returns the length of the longest prefix two words share.
+	 *
+	 * @param a
+	 *            first word
+	 * @param b
+	 *            second word
+	 * @return length of the shared prefix
+	 */
+	private static int commonPrefix(String a, String b) {
+		int length = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < length && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * A branching point of the trie. Every word below the node starts with the
+	 * first depth characters of the word at index first.
+	 */
+	private static class Node {
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private final int first;
+		private final int depth;
+		private final char[] keys;
+		private final Node[] children;
+		private int[] top;
+
+		private Node(int first, int depth, int children) {
+			this.first = first;
+			this.depth = depth;
+			this.keys = children > 0 ? new char[children] : NO_KEYS;
+			this.children = children > 0 ? new Node[children] : NO_CHILDREN;
+		}
+	}
+}
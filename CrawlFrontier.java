@@ -0,0 +1,118 @@
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks which URLs have already been found by the crawler, without a global
+ * lock. URLs are compared by a 64-bit fingerprint of their canonical form
+ * rather than with {@link URL#equals(Object)}, which may resolve host names.
+ */
+public class CrawlFrontier {
+
+	/** Amount added to {@link #slots} for each reservation in progress. */
+	private static final long RESERVING = 1L << 32;
+
+	private final VisitedSet seen;
+	private final AtomicInteger max;
+
+	/**
+	 * URLs admitted or being checked in the low 32 bits, and URLs being
+	 * checked in the high 32 bits, so both always change together.
+	 */
+	private final AtomicLong slots;
+
+	/**
+	 * Initializes an empty frontier that admits no URLs until a limit is
+	 * added.
+	 *
+	 * @param seen
+	 *            set used to remember URLs that were already found
+	 */
+	public CrawlFrontier(VisitedSet seen) {
+		this.seen = seen;
+		max = new AtomicInteger(0);
+		slots = new AtomicLong(0);
+	}
+
+	/**
+	 * Raises the number of URLs this frontier will admit.
+	 *
+	 * @param limit
+	 *            number of additional URLs to admit
+	 */
+	public void addLimit(int limit) {
+		max.addAndGet(limit);
+	}
+
+	/**
+	 * Admits a URL if it has not been seen before and the limit has not been
+	 * reached. Each URL is admitted at most once, no matter how many threads
+	 * offer it.
+	 *
+	 * @param url
+	 *            URL to admit
+	 * @return true if the URL should be crawled
+	 */
+	public boolean admit(URL url) {
+		long fingerprint = fingerprint(LinkParser.canonicalize(url));
+		if (seen.contains(fingerprint)) {
+			return false;
+		}
+
+		// reserves a slot first, so the limit is never exceeded
+		while (true) {
+			long current = slots.get();
+			if ((int) current < max.get()) {
+				if (slots.compareAndSet(current, current + RESERVING + 1)) {
+					break;
+				}
+			} else if (current >>> 32 == 0) {
+				return false;
+			} else {
+				// a slot may still be given back by a duplicate being checked
+				Thread.yield();
+			}
+		}
+
+		if (seen.add(fingerprint)) {
+			slots.addAndGet(-RESERVING);
+			return true;
+		}
+
+		slots.addAndGet(-RESERVING - 1);
+		return false;
+	}
+
+	/**
+	 * Returns the number of URLs admitted so far.
+	 *
+	 * @return number of admitted URLs
+	 */
+	public int size() {
+		long current = slots.get();
+		return (int) current - (int) (current >>> 32);
+	}
+
+	/**
+	 * Returns a 64-bit fingerprint of the text, using FNV-1a followed by a
+	 * final avalanche step so every bit depends on every character.
+	 *
+	 * @param text
+	 *            text to fingerprint
+	 * @return 64-bit fingerprint
+	 */
+	public static long fingerprint(String text) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
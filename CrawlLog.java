@@ -0,0 +1,424 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Append-only log of crawl progress, used to resume an interrupted crawl. The
+ * log records every crawl limit, every URL added to the frontier, and every
+ * URL that finished along with its validators and the words it added to the
+ * index, so replaying the log rebuilds the frontier, the visited set, and the
+ * index without fetching any finished page again. The validators let a later
+ * re-crawl skip pages that have not changed.
+ *
+ * Records are buffered and written in the background. Every few seconds the
+ * log is flushed and forced to disk, which is the checkpoint a resumed crawl
+ * starts from. Each record ends with a marker, so a record cut off by a crash
+ * is ignored on replay.
+ */
+public class CrawlLog implements Closeable {
+
+	/** Default time in milliseconds between checkpoints. */
+	public static final long DEFAULT_INTERVAL = 5000;
+
+	private static final String LIMIT = "L";
+	private static final String FOUND = "F";
+	private static final String DONE = "D";
+	private static final String SKIPPED = "S";
+	private static final String UNCHANGED = "U";
+	private static final String RECRAWL = "R";
+	private static final String END = "$";
+
+	private final FileOutputStream file;
+	private final BufferedWriter writer;
+	private final Timer timer;
+
+	/** Held for a whole checkpoint or close, so they never overlap. */
+	private final Object checkpointLock;
+	private boolean closed;
+
+	/**
+	 * Opens a log, checkpointing at the default interval.
+	 *
+	 * @param path
+	 *            path to the log file
+	 * @param append
+	 *            true to continue an existing log, false to start a new one
+	 * @throws IOException
+	 */
+	public CrawlLog(Path path, boolean append) throws IOException {
+		this(path, append, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Opens a log.
+	 *
+	 * @param path
+	 *            path to the log file
+	 * @param append
+	 *            true to continue an existing log, false to start a new one
+	 * @param interval
+	 *            time in milliseconds between checkpoints
+	 * @throws IOException
+	 */
+	public CrawlLog(Path path, boolean append, long interval) throws IOException {
+		boolean partial = append && endsWithPartialLine(path);
+		this.file = new FileOutputStream(path.toFile(), append);
+		this.writer = new BufferedWriter(new OutputStreamWriter(file, Charset.forName("UTF-8")), 1 << 16);
+		if (partial) {
+			// ends the line cut off by a crash, so the next record starts its own
+			writer.write("\n");
+		}
+		this.checkpointLock = new Object();
+		this.closed = false;
+		this.timer = new Timer("CrawlLog", true);
+		this.timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					checkpoint();
+				} catch (IOException e) {
+					System.out.println("ERROR: Unable to checkpoint crawl log.");
+				}
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * Records that the crawl limit was raised.
+	 *
+	 * @param limit
+	 *            number of additional URLs to crawl
+	 */
+	public void limit(int limit) {
+		append(LIMIT + "\t" + limit);
+	}
+
+	/**
+	 * Records that a URL was added to the frontier.
+	 *
+	 * @param url
+	 *            URL to crawl
+	 * @param depth
+	 *            number of links followed from the seed to find the URL
+	 */
+	public void found(URL url, int depth) {
+		append(FOUND + "\t" + depth + "\t" + url);
+	}
+
+	/**
+	 * Records that a URL was crawled and added the words to the index.
+	 *
+	 * @param url
+	 *            URL that was crawled
+	 * @param etag
+	 *            ETag header of the response, or null if none was sent
+	 * @param lastModified
+	 *            Last-Modified header of the response, or null if none was sent
+	 * @param words
+	 *            words added to the index, in order
+	 */
+	public void done(URL url, String etag, String lastModified, String[] words) {
+		append(DONE + "\t" + url + "\t" + field(etag) + "\t" + field(lastModified) + "\t" + String.join(" ", words));
+	}
+
+	/**
+	 * Records that a URL was crawled but nothing was added to the index.
+	 *
+	 * @param url
+	 *            URL that was crawled
+	 */
+	public void skipped(URL url) {
+		append(SKIPPED + "\t" + url);
+	}
+
+	/**
+	 * Records that a URL was crawled again and had not changed, so the words
+	 * recorded for it before are still in the index.
+	 *
+	 * @param url
+	 *            URL that was crawled
+	 */
+	public void unchanged(URL url) {
+		append(UNCHANGED + "\t" + url);
+	}
+
+	/**
+	 * Records that every URL crawled so far is about to be crawled again.
+	 */
+	public void recrawl() {
+		append(RECRAWL);
+	}
+
+	/**
+	 * Flushes buffered records and forces them to disk.
+	 *
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException {
+		synchronized (checkpointLock) {
+			if (closed) {
+				return;
+			}
+			synchronized (writer) {
+				writer.flush();
+			}
+			// forcing outside the writer lock lets the crawl keep appending meanwhile
+			file.getChannel().force(false);
+		}
+	}
+
+	/**
+	 * Checkpoints and closes the log.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		timer.cancel();
+		synchronized (checkpointLock) {
+			checkpoint();
+			closed = true;
+			synchronized (writer) {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Checks if a log ends partway through a line, as it does when a crash
+	 * cut off the last record.
+	 *
+	 * @param path
+	 *            path to the log file
+	 * @return true if the file is not empty and its last byte is not a newline
+	 * @throws IOException
+	 */
+	private static boolean endsWithPartialLine(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return false;
+		}
+		try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+			if (channel.size() == 0) {
+				return false;
+			}
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(channel.size() - 1);
+			channel.read(last);
+			return last.get(0) != '\n';
+		}
+	}
+
+	/**
+	 * Appends a single record.
+	 *
+	 * @param record
+	 *            tab-separated record without its end marker
+	 */
+	private void append(String record) {
+		synchronized (writer) {
+			try {
+				writer.write(record);
+				writer.write("\t" + END + "\n");
+			} catch (IOException e) {
+				System.out.println("ERROR: Unable to write to crawl log.");
+			}
+		}
+	}
+
+	/**
+	 * Formats an optional header value as a record field.
+	 *
+	 * @param value
+	 *            header value, or null
+	 * @return value without tabs or line breaks, or an empty string if null
+	 */
+	private static String field(String value) {
+		return value == null ? "" : value.replaceAll("[\t\r\n]", " ");
+	}
+
+	/**
+	 * Replays a log, adding the words last recorded for every URL to the
+	 * index.
+	 *
+	 * @param path
+	 *            path to the log file
+	 * @param index
+	 *            index to rebuild
+	 * @return state of the frontier when the log was last checkpointed
+	 * @throws IOException
+	 */
+	public static State replay(Path path, InvertedIndex index) throws IOException {
+		State state = new State();
+
+		try (BufferedReader reader = Files.newBufferedReader(path, Charset.forName("UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length < 2 || !fields[fields.length - 1].equals(END)) {
+					continue;
+				}
+
+				Page page = fields.length > 2 ? state.pages.get(fields[1]) : null;
+				switch (fields[0]) {
+				case LIMIT:
+					state.limit += Integer.parseInt(fields[1]);
+					break;
+				case FOUND:
+					if (!state.pages.containsKey(fields[2])) {
+						state.pages.put(fields[2], new Page(new URL(fields[2]), Integer.parseInt(fields[1])));
+					}
+					break;
+				case DONE:
+					if (page != null && fields.length == 6) {
+						page.done = true;
+						page.etag = fields[2].isEmpty() ? null : fields[2];
+						page.lastModified = fields[3].isEmpty() ? null : fields[3];
+						page.words = WordParser.split(fields[4]);
+					}
+					break;
+				case SKIPPED:
+					if (page != null) {
+						page.done = true;
+						page.etag = null;
+						page.lastModified = null;
+						page.words = null;
+					}
+					break;
+				case UNCHANGED:
+					if (page != null) {
+						page.done = true;
+					}
+					break;
+				case RECRAWL:
+					for (Page previous : state.pages.values()) {
+						previous.done = false;
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (NumberFormatException | MalformedURLException e) {
+			throw new IOException("Crawl log is corrupt: " + e.getMessage());
+		}
+
+		for (Page page : state.pages.values()) {
+			if (page.words != null) {
+				index.addAll(page.words, page.url.toString());
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * State of a crawl rebuilt from its log.
+	 */
+	public static class State {
+		private int limit = 0;
+		private final LinkedHashMap<String, Page> pages = new LinkedHashMap<>();
+
+		/**
+		 * Returns the total crawl limit.
+		 *
+		 * @return number of URLs the crawl may visit
+		 */
+		public int limit() {
+			return limit;
+		}
+
+		/**
+		 * Returns every URL added to the frontier, in the order found.
+		 *
+		 * @return URLs mapped to what was last recorded about them
+		 */
+		public Map<String, Page> pages() {
+			return Collections.unmodifiableMap(pages);
+		}
+	}
+
+	/**
+	 * What was last recorded about a single URL.
+	 */
+	public static class Page {
+		private final URL url;
+		private final int depth;
+		private boolean done = false;
+		private String etag = null;
+		private String lastModified = null;
+		private String[] words = null;
+
+		private Page(URL url, int depth) {
+			this.url = url;
+			this.depth = depth;
+		}
+
+		/**
+		 * Returns the URL.
+		 *
+		 * @return URL
+		 */
+		public URL url() {
+			return url;
+		}
+
+		/**
+		 * Returns the number of links followed from the seed to find the URL.
+		 *
+		 * @return crawl depth
+		 */
+		public int depth() {
+			return depth;
+		}
+
+		/**
+		 * Checks if the URL finished crawling since the last re-crawl began.
+		 *
+		 * @return true if the URL does not need to be fetched again
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Returns the ETag header of the last response.
+		 *
+		 * @return ETag, or null if none was sent
+		 */
+		public String etag() {
+			return etag;
+		}
+
+		/**
+		 * Returns the Last-Modified header of the last response.
+		 *
+		 * @return Last-Modified date, or null if none was sent
+		 */
+		public String lastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Returns the words last added to the index for the URL.
+		 *
+		 * @return words in order, or null if the URL is not in the index
+		 */
+		public String[] words() {
+			return words;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the crawl pipeline, such as fetching or parsing. Each stage has
+ * its own worker threads and a bounded hand-off queue, so the stages can be
+ * sized separately and a slow stage pushes back on the stage feeding it
+ * instead of letting work pile up in memory. Every stage keeps track of its
+ * throughput, how many tasks are waiting or running, and how often and how
+ * long submitters were stalled because the stage was full.
+ */
+public class CrawlStage implements Executor {
+
+	private final String name;
+	private final WorkQueue queue;
+	private final int capacity;
+	private final Semaphore slots;
+	private final long started;
+
+	private final AtomicLong submitted;
+	private final AtomicLong completed;
+	private final AtomicLong busy;
+	private final AtomicLong stalls;
+	private final AtomicLong stalled;
+
+	/**
+	 * Starts a stage.
+	 *
+	 * @param name
+	 *            name used in reports
+	 * @param workers
+	 *            number of worker threads
+	 * @param capacity
+	 *            maximum number of tasks waiting or running at once before
+	 *            submitters block, or 0 if the stage is bounded elsewhere
+	 */
+	public CrawlStage(String name, int workers, int capacity) {
+		this.name = name;
+		this.queue = new WorkQueue(Math.max(1, workers));
+		this.capacity = Math.max(0, capacity);
+		this.slots = this.capacity > 0 ? new Semaphore(this.capacity) : null;
+		this.started = System.nanoTime();
+
+		this.submitted = new AtomicLong(0);
+		this.completed = new AtomicLong(0);
+		this.busy = new AtomicLong(0);
+		this.stalls = new AtomicLong(0);
+		this.stalled = new AtomicLong(0);
+	}
+
+	/**
+	 * Adds a task to the stage, blocking while the stage is full.
+	 *
+	 * @param task
+	 *            task to run
+	 */
+	@Override
+	public void execute(Runnable task) {
+		if (slots != null && !slots.tryAcquire()) {
+			long start = System.nanoTime();
+			slots.acquireUninterruptibly();
+			stalls.incrementAndGet();
+			stalled.addAndGet(System.nanoTime() - start);
+		}
+		submitted.incrementAndGet();
+		queue.execute(new StageTask(task));
+	}
+
+	/**
+	 * Stops the worker threads. Any waiting tasks will not be run.
+	 */
+	public void shutdown() {
+		queue.shutdown();
+	}
+
+	/**
+	 * Returns the name of the stage.
+	 *
+	 * @return name
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of worker threads.
+	 *
+	 * @return number of workers
+	 */
+	public int workers() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the number of tasks the stage holds before submitters block.
+	 *
+	 * @return capacity, or 0 if the stage is bounded elsewhere
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of tasks waiting or running.
+	 *
+	 * @return queue depth
+	 */
+	public long depth() {
+		return submitted.get() - completed.get();
+	}
+
+	/**
+	 * Returns the number of tasks finished.
+	 *
+	 * @return completed tasks
+	 */
+	public long completed() {
+		return completed.get();
+	}
+
+	/**
+	 * Returns the number of tasks finished per second since the stage started.
+	 *
+	 * @return throughput in tasks per second
+	 */
+	public double throughput() {
+		double seconds = (System.nanoTime() - started) / 1e9;
+		return seconds > 0 ? completed.get() / seconds : 0;
+	}
+
+	/**
+	 * Returns the fraction of worker time spent running tasks since the stage
+	 * started.
+	 *
+	 * @return busy ratio from 0 to 1
+	 */
+	public double utilization() {
+		double available = (double) (System.nanoTime() - started) * workers();
+		return available > 0 ? Math.min(1, busy.get() / available) : 0;
+	}
+
+	/**
+	 * Returns the number of times a submitter blocked because the stage was
+	 * full.
+	 *
+	 * @return number of stalls
+	 */
+	public long stalls() {
+		return stalls.get();
+	}
+
+	/**
+	 * Returns the total time submitters spent blocked because the stage was
+	 * full.
+	 *
+	 * @return stall time in milliseconds
+	 */
+	public long stallMillis() {
+		return stalled.get() / 1000000;
+	}
+
+	/**
+	 * Returns a one-line report of the stage metrics.
+	 *
+	 * @return report
+	 */
+	@Override
+	public String toString() {
+		return String.format("%-8s %3d workers %8d done %9.1f/s  depth %4d/%-4s %3.0f%% busy  %d stalls (%d ms)", name,
+				workers(), completed(), throughput(), depth(), capacity > 0 ? String.valueOf(capacity) : "-",
+				utilization() * 100, stalls(), stallMillis());
+	}
+
+	/**
+	 * Runs a task, then frees its slot and records the time it took.
+	 */
+	private class StageTask implements Runnable {
+		private final Runnable task;
+
+		private StageTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			try {
+				task.run();
+			} finally {
+				busy.addAndGet(System.nanoTime() - start);
+				completed.incrementAndGet();
+				if (slots != null) {
+					slots.release();
+				}
+			}
+		}
+	}
+}
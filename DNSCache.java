@@ -0,0 +1,200 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches host name lookups for a fixed time, so that fetching many pages from
+ * the same web server does not wait on DNS for every connection. Failed
+ * lookups are cached for a shorter time, so links to a host that does not
+ * exist fail immediately instead of each waiting on the resolver again.
+ */
+public class DNSCache {
+
+	/** Default time in milliseconds a successful lookup is reused. */
+	public static final long DEFAULT_TTL = 5 * 60 * 1000;
+
+	/** Default time in milliseconds a failed lookup is reused. */
+	public static final long DEFAULT_NEGATIVE_TTL = 30 * 1000;
+
+	/** Least number of cached hosts above which expired entries are removed. */
+	private static final int PRUNE_SIZE = 10000;
+
+	private final ConcurrentHashMap<String, Entry> entries;
+	private final long ttl;
+	private final long negativeTtl;
+
+	/** Number of cached hosts above which expired entries are next removed. */
+	private final AtomicLong nextPrune;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * Initializes a cache with the default time to live.
+	 */
+	public DNSCache() {
+		this(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+	}
+
+	/**
+	 * Initializes a cache.
+	 *
+	 * @param ttl
+	 *            time in milliseconds a successful lookup is reused
+	 * @param negativeTtl
+	 *            time in milliseconds a failed lookup is reused
+	 */
+	public DNSCache(long ttl, long negativeTtl) {
+		this.entries = new ConcurrentHashMap<>();
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.nextPrune = new AtomicLong(PRUNE_SIZE);
+		this.hits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+	}
+
+	/**
+	 * Returns the addresses of a host, looking them up only if they are not
+	 * cached or have expired. When several threads miss on the same host at
+	 * once, only one of them asks the resolver and the others wait for its
+	 * answer.
+	 *
+	 * @param host
+	 *            host name or address literal
+	 * @return addresses of the host
+	 * @throws UnknownHostException
+	 *             if the host could not be found, now or recently
+	 */
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		String key = host.toLowerCase();
+		long now = System.currentTimeMillis();
+
+		Entry entry = entries.get(key);
+		if (entry == null || entry.expires <= now) {
+			Entry fresh = new Entry();
+			entry = entries.compute(key, (k, old) -> old != null && old.expires > now ? old : fresh);
+			if (entry == fresh) {
+				misses.incrementAndGet();
+				prune(now);
+				return lookup(host, key, fresh, now);
+			}
+		}
+
+		hits.incrementAndGet();
+		return entry.addresses(host);
+	}
+
+	/**
+	 * Asks the resolver for the addresses of a host and completes its entry.
+	 *
+	 * @param host
+	 *            host name or address literal
+	 * @param key
+	 *            key of the entry
+	 * @param entry
+	 *            entry to complete, which other threads may be waiting on
+	 * @param now
+	 *            time of the lookup
+	 * @return addresses of the host
+	 * @throws UnknownHostException
+	 *             if the host could not be found
+	 */
+	private InetAddress[] lookup(String host, String key, Entry entry, long now) throws UnknownHostException {
+		try {
+			InetAddress[] addresses = InetAddress.getAllByName(host);
+			entry.expires = now + ttl;
+			entry.future.complete(addresses);
+			return addresses;
+		} catch (UnknownHostException e) {
+			entry.expires = now + negativeTtl;
+			entry.future.completeExceptionally(e);
+			throw e;
+		} catch (RuntimeException e) {
+			// not cached, so the next lookup tries again
+			entries.remove(key, entry);
+			entry.future.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes expired entries once the cache has doubled in size since it was
+	 * last pruned, so that the cost of pruning is spread over many lookups.
+	 * Only one thread prunes at a time.
+	 *
+	 * @param now
+	 *            current time
+	 */
+	private void prune(long now) {
+		long threshold = nextPrune.get();
+		if (entries.size() <= threshold || !nextPrune.compareAndSet(threshold, Long.MAX_VALUE)) {
+			return;
+		}
+		entries.values().removeIf(e -> e.expires <= now);
+		nextPrune.set(Math.max(PRUNE_SIZE, 2L * entries.size()));
+	}
+
+	/**
+	 * Removes every cached lookup.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache, including those
+	 * that waited for another thread to ask the resolver.
+	 *
+	 * @return cache hits
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups sent to the resolver.
+	 *
+	 * @return cache misses
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * A cached lookup and when it expires. A lookup still in progress never
+	 * expires.
+	 */
+	private static class Entry {
+		private final CompletableFuture<InetAddress[]> future;
+		private volatile long expires;
+
+		private Entry() {
+			this.future = new CompletableFuture<>();
+			this.expires = Long.MAX_VALUE;
+		}
+
+		/**
+		 * Returns the addresses found, waiting for the lookup if it is still
+		 * in progress.
+		 *
+		 * @param host
+		 *            host name, for the error message
+		 * @return addresses of the host
+		 * @throws UnknownHostException
+		 *             if the lookup failed
+		 */
+		private InetAddress[] addresses(String host) throws UnknownHostException {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new UnknownHostException(host + " (cached failure)");
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * A point in time after which a search stops looking for more results and
+ * returns what it has found so far. Remembers whether it cut a search short,
+ * so the caller can tell best-effort results from complete ones.
+ */
+public class Deadline {
+
+	private final long expires;
+	private volatile boolean reached;
+
+	/**
+	 * Initializes a deadline some time from now.
+	 *
+	 * @param millis
+	 *            time until the deadline in milliseconds
+	 */
+	public Deadline(long millis) {
+		this.expires = System.nanoTime() + millis * 1000000;
+		this.reached = false;
+	}
+
+	/**
+	 * Checks if the deadline has passed, and if so remembers that work was
+	 * stopped because of it.
+	 *
+	 * @return true if the deadline has passed
+	 */
+	public boolean expired() {
+		if (System.nanoTime() - expires >= 0) {
+			reached = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether work was stopped because the deadline passed.
+	 *
+	 * @return true if {@link #expired()} ever found the deadline passed
+	 */
+	public boolean reached() {
+		return reached;
+	}
+
+	/**
+	 * Returns the time left until the deadline.
+	 *
+	 * @return remaining time in milliseconds, or 0 if it has passed
+	 */
+	public long remaining() {
+		return Math.max(0, (expires - System.nanoTime()) / 1000000);
+	}
+}
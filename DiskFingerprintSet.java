@@ -0,0 +1,127 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps fingerprints in a sorted file on disk, with only recent additions held
+ * in memory. The file is memory-mapped and searched with a binary search, so
+ * lookups read a handful of pages that the operating system may cache or
+ * evict as needed. Recent additions are merged into the file once they reach
+ * a sixteenth of its size, which keeps the heap used well under one byte per
+ * fingerprint on average.
+ */
+public class DiskFingerprintSet implements FingerprintSet, Closeable {
+
+	/** Minimum number of fingerprints buffered in memory before merging. */
+	private static final int MIN_BUFFER = 1 << 16;
+
+	private final Path file;
+	private final LongHashSet buffer;
+	private LongBuffer stored;
+
+	/**
+	 * Initializes an empty set backed by a temporary file in the directory.
+	 *
+	 * @param directory
+	 *            directory to create the file in
+	 * @throws IOException
+	 */
+	public DiskFingerprintSet(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		this.file = Files.createTempFile(directory, "visited", ".bin");
+		this.file.toFile().deleteOnExit();
+		this.buffer = new LongHashSet();
+		this.stored = LongBuffer.allocate(0);
+	}
+
+	@Override
+	public synchronized boolean contains(long fingerprint) {
+		if (buffer.contains(fingerprint)) {
+			return true;
+		}
+
+		int low = 0;
+		int high = stored.limit() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long value = stored.get(middle);
+			if (value < fingerprint) {
+				low = middle + 1;
+			} else if (value > fingerprint) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public synchronized void addNew(long fingerprint) {
+		buffer.add(fingerprint);
+		if (buffer.size() >= Math.max(MIN_BUFFER, stored.limit() / 16)) {
+			try {
+				merge();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to write visited fingerprints to disk.", e);
+			}
+		}
+	}
+
+	@Override
+	public synchronized long size() {
+		return stored.limit() + buffer.size();
+	}
+
+	@Override
+	public synchronized long sizeInBytes() {
+		return buffer.sizeInBytes();
+	}
+
+	/**
+	 * Merges the buffered fingerprints into the sorted file.
+	 *
+	 * @throws IOException
+	 */
+	private void merge() throws IOException {
+		long[] recent = buffer.toSortedArray();
+		Path merged = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(merged), 1 << 16))) {
+			int i = 0;
+			int j = 0;
+			while (i < stored.limit() || j < recent.length) {
+				if (j == recent.length || (i < stored.limit() && stored.get(i) < recent[j])) {
+					out.writeLong(stored.get(i++));
+				} else {
+					out.writeLong(recent[j++]);
+				}
+			}
+		}
+
+		Files.move(merged, file, StandardCopyOption.REPLACE_EXISTING);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			stored = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Deletes the backing file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		stored = LongBuffer.allocate(0);
+		buffer.clear();
+		Files.deleteIfExists(file);
+	}
+}
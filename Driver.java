@@ -1,8 +1,10 @@
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletHandler;
@@ -32,25 +34,114 @@ public class Driver {
 		WorkQueue queue = null;
 		QueryProcessorInterface qp = null;
 		WebCrawler crawler = null;
+		WorkQueue searchQueue = null;
+		SearchService search = null;
 		int numThreads;
 
+		if (argMap.hasFlag("-stem") || argMap.hasFlag("-stopwords")) {
+			ArrayList<TermFilter> filters = new ArrayList<>();
+			if (argMap.hasFlag("-stopwords")) {
+				try {
+					filters.add(argMap.hasValue("-stopwords")
+							? new StopwordFilter(Paths.get(argMap.getString("-stopwords"))) : new StopwordFilter());
+				} catch (IOException e) {
+					System.out.println("ERROR: Unable to read stopword file.");
+					return;
+				}
+			}
+			if (argMap.hasFlag("-stem")) {
+				filters.add(new PorterStemmer());
+			}
+			WordParser.setFilters(filters.toArray(new TermFilter[filters.size()]));
+		}
+
 		if (argMap.hasFlag("-threads") || argMap.hasFlag("-url")) {
-			threadedIndex = new ThreadSafeIndex();
+			threadedIndex = new ThreadSafeIndex(!argMap.hasFlag("-frequency"));
 			index = threadedIndex;
 			numThreads = argMap.getInteger("-threads", 5);
 			if (numThreads <= 0) {
 				numThreads = 3;
 			}
-			queue = new WorkQueue(numThreads);
+			if (argMap.hasValue("-threads")) {
+				queue = new WorkQueue(numThreads, WorkQueue.DEFAULT_CAPACITY, WorkQueue.Policy.BLOCK);
+			} else {
+				queue = new WorkQueue(1, WorkQueue.DEFAULT_MAXIMUM, WorkQueue.DEFAULT_CAPACITY,
+						WorkQueue.Policy.BLOCK);
+			}
 			qp = new MultiThreadedQueryProcessor(threadedIndex, queue);
-			crawler = new WebCrawler(queue, threadedIndex);
-			if (argMap.hasFlag("-limit")) {
+			if (argMap.hasFlag("-url") && argMap.hasFlag("-limit")) {
+				int fetchers = argMap.getInteger("-fetchers", WebCrawler.DEFAULT_FETCHERS);
+				if (fetchers <= 0) {
+					fetchers = WebCrawler.DEFAULT_FETCHERS;
+				}
+				HTTPFetcher.setTimeouts(
+						argMap.getInteger("-connecttimeout", HTTPConnectionPool.DEFAULT_CONNECT_TIMEOUT),
+						argMap.getInteger("-readtimeout", HTTPConnectionPool.DEFAULT_READ_TIMEOUT),
+						argMap.getInteger("-timeout", HTTPFetcher.DEFAULT_TOTAL_TIMEOUT));
+				if (argMap.hasFlag("-maxbytes")) {
+					HTTPFetcher.setMaxBytes(argMap.getLong("-maxbytes", HTTPFetcher.DEFAULT_MAX_BYTES));
+				}
 				int limit = argMap.getInteger("-limit", 50);
-				crawler.crawl(new URL(argMap.getString("-url")), limit);
-				queue.finish();
+				double fpp = argMap.getDouble("-fpp", VisitedSet.DEFAULT_FPP);
+				if (fpp <= 0 || fpp >= 1) {
+					fpp = VisitedSet.DEFAULT_FPP;
+				}
+				VisitedSet visited = null;
+				if (argMap.hasValue("-visited")) {
+					try {
+						visited = new VisitedSet(limit, fpp,
+								new DiskFingerprintSet(Paths.get(argMap.getString("-visited"))));
+					} catch (IOException e) {
+						System.out.println("ERROR: Unable to create visited URL file, keeping URLs in memory.");
+					}
+				}
+				if (visited == null) {
+					visited = new VisitedSet(limit, fpp);
+				}
+				int parsers = Math.max(1, argMap.getInteger("-parsers", numThreads));
+				int tokenizers = Math.max(1, argMap.getInteger("-tokenizers", numThreads));
+				int indexers = Math.max(1, argMap.getInteger("-indexers", WebCrawler.DEFAULT_INDEXERS));
+				crawler = new WebCrawler(threadedIndex, fetchers, parsers, tokenizers, indexers,
+						WebCrawler.DEFAULT_BUFFER, visited);
+				crawler.setPoliteness(argMap.getInteger("-delay", (int) WebCrawler.DEFAULT_DELAY),
+						argMap.getInteger("-hostlimit", WebCrawler.DEFAULT_HOST_LIMIT));
+				if (argMap.hasFlag("-dedup")) {
+					crawler.setDuplicateDetector(
+							new DuplicateDetector(argMap.getInteger("-dedup", DuplicateDetector.DEFAULT_DISTANCE)));
+				}
+				CrawlLog log = null;
+				CrawlLog.State state = null;
+				if (argMap.hasFlag("-checkpoint")) {
+					Path logPath = Paths.get(argMap.getString("-checkpoint", "crawl.log"));
+					try {
+						if ((argMap.hasFlag("-resume") || argMap.hasFlag("-recrawl")) && Files.exists(logPath)) {
+							state = CrawlLog.replay(logPath, threadedIndex);
+						}
+						log = new CrawlLog(logPath, state != null);
+						crawler.setLog(log);
+					} catch (IOException e) {
+						System.out.println("ERROR: Unable to use crawl log " + logPath + ", crawling from the seed.");
+						state = null;
+					}
+				}
+				if (state != null && argMap.hasFlag("-recrawl")) {
+					crawler.recrawl(state);
+				} else if (state != null) {
+					crawler.resume(state);
+				} else {
+					crawler.crawl(new URL(argMap.getString("-url")), limit);
+				}
+				crawler.finish();
+				if (log != null) {
+					try {
+						log.close();
+					} catch (IOException e) {
+						System.out.println("ERROR: Unable to close crawl log.");
+					}
+				}
 			}
 		} else {
-			index = new InvertedIndex();
+			index = new InvertedIndex(!argMap.hasFlag("-frequency"));
 			qp = new QueryProcessor(index);
 		}
 
@@ -74,7 +165,20 @@ public class Driver {
 		if (argMap.hasFlag("-port")) {
 			Server server = new Server(argMap.getInteger("-port", 8080));
 			ServletHandler handler = new ServletHandler();
-			handler.addServletWithMapping(new ServletHolder(new SearchServlet(index)), "/welcome");
+			searchQueue = new WorkQueue(Math.max(2, Runtime.getRuntime().availableProcessors()),
+					SearchService.DEFAULT_MAX_DEPTH, WorkQueue.Policy.REJECT);
+			search = new SearchService(index, searchQueue,
+					argMap.getLong("-deadline", SearchService.DEFAULT_DEADLINE), SearchService.DEFAULT_MAX_DEPTH,
+					SearchService.DEFAULT_MAX_WAIT);
+			ServletHolder page = new ServletHolder(new SearchServlet(search));
+			page.setAsyncSupported(true);
+			handler.addServletWithMapping(page, "/welcome");
+			ServletHolder api = new ServletHolder(new SearchAPIServlet(search));
+			api.setAsyncSupported(true);
+			handler.addServletWithMapping(api, "/search");
+			WorkQueue suggestQueue = searchQueue;
+			handler.addServletWithMapping(new ServletHolder(new SuggestServlet(index,
+					task -> suggestQueue.execute(task, WorkQueue.Priority.BACKGROUND))), "/suggest");
 
 			server.setHandler(handler);
 			try {
@@ -107,8 +211,34 @@ public class Driver {
 			qp.toJSON(indexFile);
 		}
 
+		if (argMap.hasFlag("-stats")) {
+			if (queue != null) {
+				System.out.println("Work queue: " + queue);
+			}
+			if (search != null) {
+				System.out.println(search);
+				System.out.println("Search queue: " + searchQueue);
+			}
+			if (crawler != null) {
+				for (CrawlStage stage : crawler.stages()) {
+					System.out.println(stage);
+				}
+				if (crawler.getDuplicateDetector() != null) {
+					System.out.println(crawler.getDuplicateDetector());
+				}
+			}
+		}
+
+		if (crawler != null) {
+			crawler.shutdown();
+		}
+
 		if (queue != null) {
 			queue.shutdown();
 		}
+
+		if (searchQueue != null) {
+			searchQueue.shutdown();
+		}
 	}
 }
\ No newline at end of file
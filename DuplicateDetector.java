@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects pages whose content was already seen under another URL. Exact
+ * duplicates are found by a fingerprint of the raw page, and near duplicates by
+ * comparing SimHash fingerprints of the page's words. Two SimHash fingerprints
+ * are near duplicates when they differ in at most a few bits.
+ *
+ * @see <a href="https://doi.org/10.1145/1242572.1242592">Detecting
+ *      Near-Duplicates for Web Crawling</a>
+ */
+public class DuplicateDetector {
+
+	/** Default maximum number of differing bits between near duplicates. */
+	public static final int DEFAULT_DISTANCE = 3;
+
+	/** Pages with fewer words are too short for a reliable SimHash. */
+	public static final int MIN_WORDS = 20;
+
+	private final LongHashSet contents;
+	private final ArrayList<HashMap<Integer, ArrayList<Long>>> blocks;
+	private final int distance;
+	private final int blockBits;
+
+	private final AtomicInteger exact;
+	private final AtomicInteger near;
+
+	/**
+	 * Initializes a detector using the default near-duplicate distance.
+	 *
+	 * @see #DEFAULT_DISTANCE
+	 */
+	public DuplicateDetector() {
+		this(DEFAULT_DISTANCE);
+	}
+
+	/**
+	 * Initializes a detector.
+	 *
+	 * @param distance
+	 *            maximum number of differing bits between near duplicates,
+	 *            from 0 to 7
+	 */
+	public DuplicateDetector(int distance) {
+		this.distance = Math.max(0, Math.min(7, distance));
+		this.contents = new LongHashSet();
+		this.blocks = new ArrayList<>();
+		this.exact = new AtomicInteger(0);
+		this.near = new AtomicInteger(0);
+
+		// with distance + 1 blocks, any near duplicate matches at least one
+		// block exactly
+		int numBlocks = this.distance + 1;
+		this.blockBits = 64 / numBlocks;
+		for (int i = 0; i < numBlocks; i++) {
+			blocks.add(new HashMap<>());
+		}
+	}
+
+	/**
+	 * Checks if the page content is identical to a page seen before, and
+	 * remembers it otherwise.
+	 *
+	 * @param html
+	 *            raw page content
+	 * @return true if the content was seen before
+	 */
+	public boolean isExactDuplicate(String html) {
+		long fingerprint = CrawlFrontier.fingerprint(html) ^ html.length();
+		boolean added;
+		synchronized (contents) {
+			added = contents.add(fingerprint);
+		}
+		if (!added) {
+			exact.incrementAndGet();
+		}
+		return !added;
+	}
+
+	/**
+	 * Checks if the words of a page are nearly the same as the words of a page
+	 * seen before, and remembers them otherwise. Pages with fewer than
+	 * {@link #MIN_WORDS} words are never considered near duplicates.
+	 *
+	 * @param words
+	 *            parsed words of the page
+	 * @return true if a near duplicate was seen before
+	 */
+	public boolean isNearDuplicate(String[] words) {
+		if (words.length < MIN_WORDS) {
+			return false;
+		}
+
+		long fingerprint = simhash(words);
+		synchronized (blocks) {
+			for (int i = 0; i < blocks.size(); i++) {
+				ArrayList<Long> candidates = blocks.get(i).get(block(fingerprint, i));
+				if (candidates != null) {
+					for (long candidate : candidates) {
+						if (Long.bitCount(candidate ^ fingerprint) <= distance) {
+							near.incrementAndGet();
+							return true;
+						}
+					}
+				}
+			}
+
+			for (int i = 0; i < blocks.size(); i++) {
+				blocks.get(i).computeIfAbsent(block(fingerprint, i), k -> new ArrayList<>()).add(fingerprint);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of exact duplicates found so far.
+	 *
+	 * @return number of exact duplicates
+	 */
+	public int exactDuplicates() {
+		return exact.get();
+	}
+
+	/**
+	 * Returns the number of near duplicates found so far.
+	 *
+	 * @return number of near duplicates
+	 */
+	public int nearDuplicates() {
+		return near.get();
+	}
+
+	/**
+	 * Returns a one-line report of the duplicates skipped.
+	 *
+	 * @return report
+	 */
+	@Override
+	public String toString() {
+		return String.format("duplicates skipped: %d exact, %d near", exactDuplicates(), nearDuplicates());
+	}
+
+	/**
+	 * Computes the 64-bit SimHash of the words. Each word votes for every bit
+	 * of its own fingerprint, so documents that share most of their words end
+	 * up with fingerprints that differ in only a few bits.
+	 *
+	 * @param words
+	 *            words to fingerprint
+	 * @return SimHash fingerprint
+	 */
+	public static long simhash(String[] words) {
+		int[] votes = new int[64];
+		for (String word : words) {
+			long hash = CrawlFrontier.fingerprint(word);
+			for (int bit = 0; bit < 64; bit++) {
+				votes[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+			}
+		}
+
+		long fingerprint = 0;
+		for (int bit = 0; bit < 64; bit++) {
+			if (votes[bit] > 0) {
+				fingerprint |= 1L << bit;
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Returns one block of bits of the fingerprint. The last block also holds
+	 * any remaining bits.
+	 *
+	 * @param fingerprint
+	 *            SimHash fingerprint
+	 * @param i
+	 *            block number
+	 * @return bits of the block
+	 */
+	private int block(long fingerprint, int i) {
+		int shift = i * blockBits;
+		int bits = i == blocks.size() - 1 ? 64 - shift : blockBits;
+		long mask = bits == 64 ? -1L : (1L << bits) - 1;
+		return Long.hashCode((fingerprint >>> shift) & mask);
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * An exact, thread-safe set of 64-bit fingerprints, used to confirm the
+ * possible positives of a {@link BloomFilter}.
+ */
+public interface FingerprintSet {
+
+	/**
+	 * Checks if the fingerprint is in the set.
+	 *
+	 * @param fingerprint
+	 *            64-bit fingerprint
+	 * @return true if the fingerprint was added before
+	 */
+	public boolean contains(long fingerprint);
+
+	/**
+	 * Adds a fingerprint that the caller knows is not already in the set.
+	 *
+	 * @param fingerprint
+	 *            64-bit fingerprint
+	 */
+	public void addNew(long fingerprint);
+
+	/**
+	 * Returns the number of fingerprints in the set.
+	 *
+	 * @return number of fingerprints
+	 */
+	public long size();
+
+	/**
+	 * Returns an estimate of the heap memory used by the set in bytes.
+	 *
+	 * @return heap bytes used
+	 */
+	public long sizeInBytes();
+}
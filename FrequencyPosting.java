@@ -0,0 +1,53 @@
+import java.util.TreeSet;
+
+/**
+ * Posting that only keeps how often and how early a word was found, which is
+ * all that ranking search results requires.
+ */
+public class FrequencyPosting implements Posting {
+
+	private int frequency;
+	private int first;
+
+	/**
+	 * Initializes an empty posting.
+	 */
+	public FrequencyPosting() {
+		frequency = 0;
+		first = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Records another occurrence of the word. Unlike {@link PositionPosting},
+	 * adding the same position twice counts it twice.
+	 *
+	 * @param position
+	 *            position of the word in the file
+	 */
+	@Override
+	public void add(int position) {
+		frequency++;
+		first = Math.min(first, position);
+	}
+
+	@Override
+	public void addAll(Posting other) {
+		frequency += other.frequency();
+		first = Math.min(first, other.first());
+	}
+
+	@Override
+	public int frequency() {
+		return frequency;
+	}
+
+	@Override
+	public int first() {
+		return first;
+	}
+
+	@Override
+	public TreeSet<Integer> positions() {
+		return null;
+	}
+}
@@ -0,0 +1,192 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads exactly one HTTP/1.1 message body from a connection, using either the
+ * Content-Length header or chunked transfer encoding to find where the body
+ * ends. Bodies without either are read until the server closes the
+ * connection. Closing this stream does not close the underlying connection.
+ */
+public class HTTPBodyInputStream extends InputStream {
+
+	/** Longest line of header text read, in bytes. */
+	public static final int MAX_LINE = 8 * 1024;
+
+	/** Most bytes of header text read for one set of headers or trailers. */
+	public static final int MAX_HEADER = 64 * 1024;
+
+	private final InputStream in;
+	private final boolean chunked;
+	private final boolean untilClose;
+
+	/** Bytes left in the body or current chunk. */
+	private long remaining;
+
+	/** Whether the end of the body has been reached. */
+	private boolean complete;
+
+	/**
+	 * Initializes a body stream.
+	 *
+	 * @param in
+	 *            input stream of the connection, positioned after the headers
+	 * @param length
+	 *            value of the Content-Length header, or -1 if missing
+	 * @param chunked
+	 *            true if the body uses chunked transfer encoding
+	 */
+	public HTTPBodyInputStream(InputStream in, long length, boolean chunked) {
+		this.in = in;
+		this.chunked = chunked;
+		this.untilClose = !chunked && length < 0;
+		this.remaining = chunked ? 0 : length;
+		this.complete = !chunked && length == 0;
+	}
+
+	/**
+	 * Returns whether the whole body was read and the connection is
+	 * positioned at the start of the next response.
+	 *
+	 * @return true if the body was read to its framed end
+	 */
+	public boolean isComplete() {
+		return complete && !untilClose;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (complete) {
+			return -1;
+		}
+		if (length == 0) {
+			return 0;
+		}
+
+		if (untilClose) {
+			int read = in.read(buffer, offset, length);
+			if (read < 0) {
+				complete = true;
+			}
+			return read;
+		}
+
+		if (chunked && remaining == 0) {
+			remaining = nextChunk();
+			if (remaining == 0) {
+				complete = true;
+				return -1;
+			}
+		}
+
+		int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+		if (read < 0) {
+			throw new EOFException("Connection closed before end of body.");
+		}
+
+		remaining -= read;
+		if (remaining == 0) {
+			if (chunked) {
+				readLine(in);
+			} else {
+				complete = true;
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Reads and discards the rest of the body.
+	 *
+	 * @throws IOException
+	 */
+	public void drain() throws IOException {
+		byte[] buffer = new byte[8192];
+		while (read(buffer, 0, buffer.length) >= 0) {
+			// discard
+		}
+	}
+
+	/**
+	 * Reads the size line of the next chunk. After the last chunk, any
+	 * trailer fields are skipped.
+	 *
+	 * @return size of the next chunk, or 0 after the last chunk
+	 * @throws IOException
+	 */
+	private long nextChunk() throws IOException {
+		String line = readLine(in);
+		if (line == null) {
+			throw new EOFException("Connection closed before end of chunked body.");
+		}
+
+		int extension = line.indexOf(';');
+		String size = (extension < 0 ? line : line.substring(0, extension)).trim();
+		long length;
+		try {
+			// parseLong allows a sign, which a chunk size may not have
+			length = Long.parseLong(size, 16);
+		} catch (NumberFormatException e) {
+			// includes sizes too large for a long
+			throw new IOException("Bad chunk size: " + size);
+		}
+		if (length < 0 || size.charAt(0) == '+' || size.charAt(0) == '-') {
+			throw new IOException("Bad chunk size: " + size);
+		}
+
+		if (length == 0) {
+			int total = 0;
+			String trailer;
+			while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+				// trailer fields are not used
+				total += trailer.length() + 2;
+				if (total > MAX_HEADER) {
+					throw new IOException("Trailer fields are longer than " + MAX_HEADER + " bytes.");
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Reads a single CRLF or LF terminated line of header text, of at most
+	 * {@link #MAX_LINE} bytes.
+	 *
+	 * @param in
+	 *            stream to read from
+	 * @return line without its terminator, or null if the stream ended before
+	 *         any characters were read
+	 * @throws IOException
+	 *             if the line is too long or cannot be read
+	 */
+	public static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) >= 0) {
+			if (c == '\n') {
+				int end = line.length();
+				if (end > 0 && line.charAt(end - 1) == '\r') {
+					line.setLength(end - 1);
+				}
+				return line.toString();
+			}
+			if (line.length() >= MAX_LINE) {
+				throw new IOException("Header line is longer than " + MAX_LINE + " bytes.");
+			}
+			line.append((char) c);
+		}
+		return line.length() == 0 ? null : line.toString();
+	}
+
+	@Override
+	public void close() {
+		// leaves the connection open so it can be reused
+	}
+}
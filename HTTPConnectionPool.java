@@ -0,0 +1,398 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Keeps idle persistent connections open per host, so that fetching many pages
+ * from the same web server does not pay for a new TCP handshake every time.
+ * New connections resolve hosts through a {@link DNSCache}, and every
+ * connection has a connect timeout, a read timeout, and an optional deadline
+ * for the whole request, so an unresponsive server cannot hold a thread
+ * forever.
+ */
+public class HTTPConnectionPool {
+
+	/** Default maximum number of idle connections kept per host. */
+	public static final int DEFAULT_MAX_IDLE = 8;
+
+	/** Default time in milliseconds an idle connection may be reused. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 15000;
+
+	/** Default time in milliseconds to wait for a connection to open. */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+	/** Default time in milliseconds to wait for any data from a server. */
+	public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+	private final ConcurrentHashMap<String, ConcurrentLinkedDeque<Connection>> idle;
+	private final int maxIdle;
+	private final long idleTimeout;
+	private final DNSCache dns;
+
+	private volatile int connectTimeout;
+	private volatile int readTimeout;
+
+	/**
+	 * Initializes a pool with the default limits.
+	 */
+	public HTTPConnectionPool() {
+		this(DEFAULT_MAX_IDLE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Initializes a pool with the specified limits.
+	 *
+	 * @param maxIdle
+	 *            maximum number of idle connections kept per host
+	 * @param idleTimeout
+	 *            time in milliseconds an idle connection may be reused
+	 */
+	public HTTPConnectionPool(int maxIdle, long idleTimeout) {
+		this(maxIdle, idleTimeout, new DNSCache());
+	}
+
+	/**
+	 * Initializes a pool with the specified limits and host name cache.
+	 *
+	 * @param maxIdle
+	 *            maximum number of idle connections kept per host
+	 * @param idleTimeout
+	 *            time in milliseconds an idle connection may be reused
+	 * @param dns
+	 *            cache used to look up hosts
+	 */
+	public HTTPConnectionPool(int maxIdle, long idleTimeout, DNSCache dns) {
+		this.idle = new ConcurrentHashMap<>();
+		this.maxIdle = maxIdle;
+		this.idleTimeout = idleTimeout;
+		this.dns = dns;
+		this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+		this.readTimeout = DEFAULT_READ_TIMEOUT;
+	}
+
+	/**
+	 * Sets the timeouts used from now on.
+	 *
+	 * @param connectTimeout
+	 *            time in milliseconds to wait for a connection to open, or 0
+	 *            to wait forever
+	 * @param readTimeout
+	 *            time in milliseconds to wait for any data from a server, or 0
+	 *            to wait forever
+	 */
+	public void setTimeouts(int connectTimeout, int readTimeout) {
+		this.connectTimeout = Math.max(0, connectTimeout);
+		this.readTimeout = Math.max(0, readTimeout);
+	}
+
+	/**
+	 * Returns the cache used to look up hosts.
+	 *
+	 * @return host name cache
+	 */
+	public DNSCache dns() {
+		return dns;
+	}
+
+	/**
+	 * Returns an idle connection to the host if one is available, or opens a
+	 * new connection otherwise.
+	 *
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @return open connection
+	 * @throws IOException
+	 */
+	public Connection acquire(String host, int port) throws IOException {
+		return acquire(host, port, 0);
+	}
+
+	/**
+	 * Returns an idle connection to the host if one is available, or opens a
+	 * new connection otherwise. Reads on the connection fail once the deadline
+	 * passes.
+	 *
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @param deadline
+	 *            time in milliseconds by which the request must finish, or 0
+	 *            for no deadline
+	 * @return open connection
+	 * @throws IOException
+	 */
+	public Connection acquire(String host, int port, long deadline) throws IOException {
+		Connection pooled = poll(host, port);
+		if (pooled != null) {
+			pooled.deadline = deadline;
+			return pooled;
+		}
+		return open(host, port, deadline);
+	}
+
+	/**
+	 * Returns an idle connection to the host, discarding any that have been
+	 * idle for too long.
+	 *
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @return idle connection, or null if none are available
+	 */
+	public Connection poll(String host, int port) {
+		ConcurrentLinkedDeque<Connection> connections = idle.get(key(host, port));
+		if (connections == null) {
+			return null;
+		}
+
+		Connection connection;
+		while ((connection = connections.pollFirst()) != null) {
+			if (System.currentTimeMillis() - connection.released < idleTimeout && !connection.socket.isClosed()) {
+				connection.reused = true;
+				return connection;
+			}
+			connection.close();
+		}
+		return null;
+	}
+
+	/**
+	 * Opens a new connection to the host.
+	 *
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @return open connection
+	 * @throws IOException
+	 */
+	public Connection open(String host, int port) throws IOException {
+		return open(host, port, 0);
+	}
+
+	/**
+	 * Opens a new connection to the host. Reads on the connection fail once
+	 * the deadline passes.
+	 *
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @param deadline
+	 *            time in milliseconds by which the request must finish, or 0
+	 *            for no deadline
+	 * @return open connection
+	 * @throws IOException
+	 */
+	public Connection open(String host, int port, long deadline) throws IOException {
+		Connection connection = new Connection(key(host, port), connect(host, port, deadline));
+		connection.deadline = deadline;
+		return connection;
+	}
+
+	/**
+	 * Opens a socket to the host, trying each of its addresses in turn until
+	 * one accepts the connection within the connect timeout.
+	 *
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @param deadline
+	 *            time in milliseconds by which the socket must be open, or 0
+	 *            for no deadline
+	 * @return connected socket
+	 * @throws IOException
+	 *             if no address accepted the connection
+	 */
+	public Socket connect(String host, int port, long deadline) throws IOException {
+		IOException failure = null;
+		for (InetAddress address : dns.resolve(host)) {
+			Socket socket = new Socket();
+			try {
+				socket.connect(new InetSocketAddress(address, port), timeout(connectTimeout, deadline));
+				socket.setSoTimeout(readTimeout);
+				return socket;
+			} catch (IOException e) {
+				socket.close();
+				failure = e;
+			}
+		}
+		throw failure != null ? failure : new IOException("No addresses for " + host);
+	}
+
+	/**
+	 * Returns a connection whose last response was fully read to the pool, so
+	 * it may be reused by the next request to the same host. The connection is
+	 * closed instead if the pool for that host is full.
+	 *
+	 * @param connection
+	 *            connection to return
+	 */
+	public void release(Connection connection) {
+		ConcurrentLinkedDeque<Connection> connections = idle.computeIfAbsent(connection.key,
+				k -> new ConcurrentLinkedDeque<>());
+
+		if (connections.size() < maxIdle) {
+			connection.released = System.currentTimeMillis();
+			connections.addFirst(connection);
+		} else {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Closes every idle connection in the pool.
+	 */
+	public void close() {
+		for (ConcurrentLinkedDeque<Connection> connections : idle.values()) {
+			Connection connection;
+			while ((connection = connections.pollFirst()) != null) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the key used to group connections to the same host and port.
+	 *
+	 * @param host
+	 *            host name
+	 * @param port
+	 *            port number
+	 * @return pool key
+	 */
+	private static String key(String host, int port) {
+		return host.toLowerCase() + ":" + port;
+	}
+
+	/**
+	 * Returns the socket timeout to use so a blocking call ends by the
+	 * deadline.
+	 *
+	 * @param timeout
+	 *            timeout in milliseconds, or 0 for none
+	 * @param deadline
+	 *            time in milliseconds the request must finish by, or 0 for none
+	 * @return timeout in milliseconds, or 0 for none
+	 * @throws SocketTimeoutException
+	 *             if the deadline has already passed
+	 */
+	private static int timeout(int timeout, long deadline) throws SocketTimeoutException {
+		if (deadline <= 0) {
+			return timeout;
+		}
+
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			throw new SocketTimeoutException("Request deadline passed");
+		}
+		return (int) (timeout > 0 ? Math.min(timeout, remaining) : Math.min(Integer.MAX_VALUE, remaining));
+	}
+
+	/**
+	 * A socket to a web server along with its buffered streams, which must be
+	 * kept together since the input buffer may already hold part of the next
+	 * response.
+	 */
+	public static class Connection implements Closeable {
+		private final String key;
+		private final Socket socket;
+		private final InputStream in;
+		private final OutputStream out;
+		private final int readTimeout;
+		private long released;
+		private boolean reused;
+		private volatile long deadline;
+
+		private Connection(String key, Socket socket) throws IOException {
+			this.key = key;
+			this.socket = socket;
+			this.readTimeout = socket.getSoTimeout();
+			this.in = new BufferedInputStream(new DeadlineInputStream(socket.getInputStream()));
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+			this.released = 0;
+			this.reused = false;
+			this.deadline = 0;
+		}
+
+		/**
+		 * Returns the buffered input stream of the connection.
+		 *
+		 * @return input stream
+		 */
+		public InputStream input() {
+			return in;
+		}
+
+		/**
+		 * Returns the buffered output stream of the connection.
+		 *
+		 * @return output stream
+		 */
+		public OutputStream output() {
+			return out;
+		}
+
+		/**
+		 * Returns whether this connection was taken from the pool, in which
+		 * case the server may have closed it while it was idle.
+		 *
+		 * @return true if the connection was used before
+		 */
+		public boolean isReused() {
+			return reused;
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing else to release
+			}
+		}
+
+		/**
+		 * Shortens the read timeout of the socket before each read, so that
+		 * a server trickling data cannot keep a request going past its
+		 * deadline.
+		 */
+		private class DeadlineInputStream extends FilterInputStream {
+
+			private DeadlineInputStream(InputStream in) {
+				super(in);
+			}
+
+			@Override
+			public int read() throws IOException {
+				prepare();
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				prepare();
+				return super.read(buffer, offset, length);
+			}
+
+			private void prepare() throws IOException {
+				socket.setSoTimeout(timeout(readTimeout, deadline));
+			}
+		}
+	}
+}
@@ -1,24 +1,58 @@
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.PushbackInputStream;
 import java.net.MalformedURLException;
 import java.net.Socket;
+import java.net.SocketException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * An example class designed to make fetching the results of different HTTP
- * operations easier.
+ * operations easier. Connections are kept open and pooled per host, so
+ * repeated requests to the same web server reuse the same socket.
  */
 public class HTTPFetcher {
 	/** Port used by socket. For web servers, should be port 80. */
 	public static final int DEFAULT_PORT = 80;
 
+	/** Persistent connections shared by every fetch. */
+	private static final HTTPConnectionPool pool = new HTTPConnectionPool();
+
+	/** Default maximum size of a response body in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	/** Maximum size of a response body, before and after decompression. */
+	private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+	/** Largest buffer allocated for a body before any of it has arrived. */
+	private static final int INITIAL_BUFFER = 64 * 1024;
+
+	/** Largest body still read after rejecting a response, to keep its connection. */
+	private static final long DRAIN_LIMIT = 16 * 1024;
+
+	/** Default time in milliseconds a whole request may take. */
+	public static final int DEFAULT_TOTAL_TIMEOUT = 30000;
+
+	/** Time in milliseconds a whole request may take, or 0 for no limit. */
+	private static volatile int totalTimeout = DEFAULT_TOTAL_TIMEOUT;
+
 	/** Version of HTTP used and supported. */
 	public static final String version = "HTTP/1.1";
 
@@ -31,7 +65,10 @@ public class HTTPFetcher {
 	/**
 	 * Will connect to the web server and fetch the URL using the HTTP request
 	 * provided. It would be more efficient to operate on each line as returned
-	 * instead of storing the entire result as a list.
+	 * instead of storing the entire result as a list. Opens a new connection
+	 * for every request; use {@link #fetch(URL, HTTP)} to reuse connections.
+	 * The host is looked up through the shared DNS cache, and the connect and
+	 * read timeouts apply.
 	 *
 	 * @param url
 	 *            - url to fetch
@@ -47,7 +84,7 @@ public class HTTPFetcher {
 		ArrayList<String> lines = new ArrayList<>();
 		int port = url.getPort() < 0 ? DEFAULT_PORT : url.getPort();
 
-		try (Socket socket = new Socket(url.getHost(), port);
+		try (Socket socket = pool.connect(url.getHost(), port, 0);
 				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
 				PrintWriter writer = new PrintWriter(socket.getOutputStream());) {
 			writer.println(request);
@@ -76,13 +113,397 @@ public class HTTPFetcher {
 	 * @see {@link HTTP}
 	 */
 	public static String craftHTTPRequest(URL url, HTTP type) {
-		String host = url.getHost();
+		Map<String, String> fields = new LinkedHashMap<>();
+		fields.put("Connection", "close");
+		return craftHTTPRequest(url, type, fields);
+	}
+
+	/**
+	 * Crafts a minimal HTTP/1.1 request for the provided method.
+	 *
+	 * @param url
+	 *            - url to fetch
+	 * @param type
+	 *            - HTTP method to use
+	 * @param fields
+	 *            - header fields to send after the Host field
+	 *
+	 * @return HTTP/1.1 request
+	 *
+	 * @see {@link HTTP}
+	 */
+	public static String craftHTTPRequest(URL url, HTTP type, Map<String, String> fields) {
+		String host = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
 		String resource = url.getFile().isEmpty() ? "/" : url.getFile();
 
 		// The specification is specific about where to use a new line
 		// versus a carriage return!
-		return String.format("%s %s %s\r\n" + "Host: %s\r\n" + "Connection: close\r\n" + "\r\n", type.name(), resource,
-				version, host);
+		StringBuilder request = new StringBuilder();
+		request.append(String.format("%s %s %s\r\n" + "Host: %s\r\n", type.name(), resource, version, host));
+		for (Map.Entry<String, String> field : fields.entrySet()) {
+			request.append(field.getKey()).append(": ").append(field.getValue()).append("\r\n");
+		}
+		return request.append("\r\n").toString();
+	}
+
+	/**
+	 * Sets the maximum size of a response body. The limit applies both to the
+	 * bytes received and, for compressed responses, to the bytes after
+	 * decompression.
+	 *
+	 * @param bytes
+	 *            - maximum body size in bytes
+	 */
+	public static void setMaxBytes(long bytes) {
+		maxBytes = bytes;
+	}
+
+	/**
+	 * Sets how long fetches may wait on a web server. A server that does not
+	 * accept the connection, stops sending data, or sends it too slowly to
+	 * finish the whole response in time makes the fetch fail with a
+	 * {@link java.net.SocketTimeoutException}.
+	 *
+	 * @param connect
+	 *            - time in milliseconds to wait for a connection, or 0 to wait
+	 *            forever
+	 * @param read
+	 *            - time in milliseconds to wait for any data, or 0 to wait
+	 *            forever
+	 * @param total
+	 *            - time in milliseconds a whole request may take, or 0 for no
+	 *            limit
+	 */
+	public static void setTimeouts(int connect, int read, int total) {
+		pool.setTimeouts(connect, read);
+		totalTimeout = Math.max(0, total);
+	}
+
+	/**
+	 * Returns the cache used to look up hosts for every fetch.
+	 *
+	 * @return host name cache
+	 */
+	public static DNSCache dns() {
+		return pool.dns();
+	}
+
+	/**
+	 * Sends the request over a pooled persistent connection and reads the
+	 * response. The body is read as bytes using the Content-Length header or
+	 * chunked transfer encoding, after which the connection is returned to the
+	 * pool for the next request to the same host. Responses compressed with
+	 * gzip or deflate are decompressed as they are read. The request fails if
+	 * the server is slower than the timeouts allow.
+	 *
+	 * @see #setTimeouts(int, int, int)
+	 *
+	 * @param url
+	 *            - url to fetch
+	 * @param type
+	 *            - HTTP method to use
+	 * @return response headers and body
+	 *
+	 * @throws IOException
+	 */
+	public static HTTPResponse fetch(URL url, HTTP type) throws IOException {
+		return fetch(url, type, new HashMap<String, String>());
+	}
+
+	/**
+	 * Fetches a URL as in {@link #fetch(URL, HTTP)}, sending additional header
+	 * fields such as If-None-Match or If-Modified-Since for a conditional
+	 * request.
+	 *
+	 * @param url
+	 *            - url to fetch
+	 * @param type
+	 *            - HTTP method to use
+	 * @param extra
+	 *            - additional header field names mapped to their values
+	 * @return response headers and body
+	 *
+	 * @throws IOException
+	 */
+	public static HTTPResponse fetch(URL url, HTTP type, Map<String, String> extra) throws IOException {
+		return fetch(url, type, extra, null);
+	}
+
+	/**
+	 * Fetches a URL as in {@link #fetch(URL, HTTP, Map)}, but checks the
+	 * response headers before reading the body. If the headers are rejected,
+	 * the body is skipped and the connection is closed unless the body is
+	 * small enough to discard cheaply, so a crawler asking for HTML never
+	 * downloads a large PDF or video. The returned response then has the
+	 * headers and an empty body.
+	 *
+	 * @param url
+	 *            - url to fetch
+	 * @param type
+	 *            - HTTP method to use
+	 * @param extra
+	 *            - additional header field names mapped to their values
+	 * @param accept
+	 *            - decides from the headers whether to read the body, or null
+	 *            to read every body
+	 * @return response headers and body
+	 *
+	 * @throws IOException
+	 *             if the request fails, or if the body is larger than the
+	 *             maximum size
+	 */
+	public static HTTPResponse fetch(URL url, HTTP type, Map<String, String> extra, Predicate<HTTPResponse> accept)
+			throws IOException {
+		String host = url.getHost();
+		int port = url.getPort() < 0 ? DEFAULT_PORT : url.getPort();
+		Map<String, String> fields = new LinkedHashMap<>();
+		fields.put("Connection", "keep-alive");
+		fields.put("Accept-Encoding", "gzip, deflate");
+		fields.putAll(extra);
+		byte[] request = craftHTTPRequest(url, type, fields).getBytes(Charset.forName("UTF-8"));
+		long deadline = totalTimeout > 0 ? System.currentTimeMillis() + totalTimeout : 0;
+
+		HTTPConnectionPool.Connection connection = pool.acquire(host, port, deadline);
+		try {
+			return exchange(connection, request, type, accept);
+		} catch (EOFException | SocketException e) {
+			connection.close();
+			if (!connection.isReused()) {
+				throw e;
+			}
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+
+		// the server closed the idle connection, so retry on a new one
+		connection = pool.open(host, port, deadline);
+		try {
+			return exchange(connection, request, type, accept);
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the request to the connection and reads a single response. The
+	 * connection is released to the pool or closed before returning.
+	 *
+	 * @param connection
+	 *            - open connection
+	 * @param request
+	 *            - full HTTP request
+	 * @param type
+	 *            - HTTP method used by the request
+	 * @return response headers and body
+	 *
+	 * @throws IOException
+	 */
+	private static HTTPResponse exchange(HTTPConnectionPool.Connection connection, byte[] request, HTTP type,
+			Predicate<HTTPResponse> accept) throws IOException {
+		OutputStream out = connection.output();
+		out.write(request);
+		out.flush();
+
+		InputStream in = connection.input();
+		HTTPResponse head;
+		List<String> headers;
+
+		// skips any interim 1xx responses
+		do {
+			headers = readHeaders(in);
+			head = new HTTPResponse(headers, new byte[0]);
+		} while (head.code() >= 100 && head.code() < 200);
+
+		HTTPBodyInputStream body = bodyStream(in, type, head);
+		long length = contentLength(head);
+		if (accept != null && !accept.test(head)) {
+			if (!body.isComplete() && length >= 0 && length <= DRAIN_LIMIT) {
+				body.drain();
+			}
+			if (body.isComplete() && isKeepAlive(head)) {
+				pool.release(connection);
+			} else {
+				connection.close();
+			}
+			return head;
+		}
+
+		long limit = maxBytes;
+		if (length > limit && !body.isComplete()) {
+			connection.close();
+			throw new IOException("Response body of " + length + " bytes is larger than " + limit + " bytes.");
+		}
+		LimitedInputStream received = new LimitedInputStream(body, limit, "Response body");
+		InputStream decoded = decode(received, head);
+		if (decoded != received) {
+			decoded = new LimitedInputStream(decoded, limit, "Decompressed response body");
+		}
+
+		// grows only as bytes arrive, so a large Content-Length alone costs nothing
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				decoded == received && length > 0 && !body.isComplete() ? (int) Math.min(length, INITIAL_BUFFER)
+						: 8192);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = decoded.read(buffer, 0, buffer.length)) >= 0) {
+			bytes.write(buffer, 0, read);
+		}
+		// any bytes after the end of the compressed data are still part of the
+		// body, and still count against its limit
+		while (received.read(buffer, 0, buffer.length) >= 0) {
+			// discard
+		}
+		decoded.close();
+
+		HTTPResponse response = new HTTPResponse(headers, bytes.toByteArray());
+		if (body.isComplete() && isKeepAlive(response)) {
+			pool.release(connection);
+		} else {
+			connection.close();
+		}
+		return response;
+	}
+
+	/**
+	 * Reads the status line and header lines of a response, up to and
+	 * including the empty line that ends them. Each line may be at most
+	 * {@link HTTPBodyInputStream#MAX_LINE} bytes, and all of them together at
+	 * most {@link HTTPBodyInputStream#MAX_HEADER} bytes.
+	 *
+	 * @param in
+	 *            - input stream of the connection
+	 * @return status line followed by the header lines
+	 *
+	 * @throws IOException
+	 */
+	private static List<String> readHeaders(InputStream in) throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+		String line = HTTPBodyInputStream.readLine(in);
+		if (line == null) {
+			throw new EOFException("Connection closed before response.");
+		}
+
+		int total = 0;
+		while (line != null && !line.isEmpty()) {
+			total += line.length() + 2;
+			if (total > HTTPBodyInputStream.MAX_HEADER) {
+				throw new IOException(
+						"Response headers are longer than " + HTTPBodyInputStream.MAX_HEADER + " bytes.");
+			}
+			lines.add(line);
+			line = HTTPBodyInputStream.readLine(in);
+		}
+		return lines;
+	}
+
+	/**
+	 * Creates a stream that reads exactly the body of the response.
+	 *
+	 * @param in
+	 *            - input stream of the connection, positioned after the headers
+	 * @param type
+	 *            - HTTP method used by the request
+	 * @param head
+	 *            - response headers
+	 * @return body stream
+	 */
+	private static HTTPBodyInputStream bodyStream(InputStream in, HTTP type, HTTPResponse head) {
+		int code = head.code();
+		if (type == HTTP.HEAD || code == 204 || code == 304) {
+			return new HTTPBodyInputStream(in, 0, false);
+		}
+
+		String encoding = head.header("Transfer-Encoding");
+		if (encoding != null && encoding.toLowerCase().contains("chunked")) {
+			return new HTTPBodyInputStream(in, -1, true);
+		}
+
+		return new HTTPBodyInputStream(in, contentLength(head), false);
+	}
+
+	/**
+	 * Returns the value of the Content-Length header, unless the body is
+	 * chunked.
+	 *
+	 * @param head
+	 *            response headers
+	 * @return length of the body in bytes, or -1 if unknown
+	 */
+	private static long contentLength(HTTPResponse head) {
+		String encoding = head.header("Transfer-Encoding");
+		String length = head.header("Content-Length");
+		if (length == null || (encoding != null && encoding.toLowerCase().contains("chunked"))) {
+			return -1;
+		}
+
+		try {
+			return Math.max(-1, Long.parseLong(length.trim()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Wraps the body in a decompressing stream if the Content-Encoding header
+	 * is gzip or deflate. Deflate bodies may or may not have a zlib wrapper,
+	 * since servers disagree on what the name means.
+	 *
+	 * @param body
+	 *            - raw body stream
+	 * @param head
+	 *            - response headers
+	 * @return stream of decoded body bytes
+	 *
+	 * @throws IOException
+	 */
+	private static InputStream decode(InputStream body, HTTPResponse head) throws IOException {
+		String encoding = head.header("Content-Encoding");
+		encoding = encoding == null ? "" : encoding.trim().toLowerCase();
+
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			PushbackInputStream peek = new PushbackInputStream(body, 1);
+			int first = peek.read();
+			if (first < 0) {
+				return peek;
+			}
+			peek.unread(first);
+			return new GZIPInputStream(peek, 8192);
+		}
+
+		if (encoding.equals("deflate")) {
+			PushbackInputStream peek = new PushbackInputStream(body, 2);
+			byte[] header = new byte[2];
+			int read = peek.read(header, 0, 2);
+			if (read <= 0) {
+				return peek;
+			}
+			peek.unread(header, 0, read);
+			int cmf = header[0] & 0xFF;
+			int flg = read == 2 ? header[1] & 0xFF : 0;
+			boolean zlib = read == 2 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+			return new InflaterInputStream(peek, new Inflater(!zlib), 8192);
+		}
+
+		return body;
+	}
+
+	/**
+	 * Checks if the server will keep the connection open after the response.
+	 *
+	 * @param response
+	 *            - response headers
+	 * @return true if the connection may be reused
+	 */
+	private static boolean isKeepAlive(HTTPResponse response) {
+		String connection = response.header("Connection");
+		connection = connection == null ? "" : connection.toLowerCase();
+
+		if (response.headerLines().get(0).startsWith("HTTP/1.0")) {
+			return connection.contains("keep-alive");
+		}
+		return !connection.contains("close");
 	}
 
 	/**
@@ -97,11 +518,8 @@ public class HTTPFetcher {
 	 * @throws IOException
 	 */
 	public static String fetchHeaders(String url) throws UnknownHostException, MalformedURLException, IOException {
-		URL target = new URL(url);
-		String request = craftHTTPRequest(target, HTTP.HEAD);
-		List<String> lines = fetchLines(target, request);
-
-		return String.join(System.lineSeparator(), lines);
+		HTTPResponse response = fetch(new URL(url), HTTP.HEAD);
+		return String.join(System.lineSeparator(), response.headerLines());
 	}
 
 	/**
@@ -116,11 +534,9 @@ public class HTTPFetcher {
 	 * @throws IOException
 	 */
 	public static String fetchAll(String url) throws UnknownHostException, MalformedURLException, IOException {
-		URL target = new URL(url);
-		String request = craftHTTPRequest(target, HTTP.GET);
-		List<String> lines = fetchLines(target, request);
-
-		return String.join(System.lineSeparator(), lines);
+		HTTPResponse response = fetch(new URL(url), HTTP.GET);
+		return String.join(System.lineSeparator(), response.headerLines()) + System.lineSeparator()
+				+ System.lineSeparator() + response.text();
 	}
 
 	/**
@@ -135,24 +551,11 @@ public class HTTPFetcher {
 	 * @throws IOException
 	 */
 	public static String fetchHTML(String url) throws UnknownHostException, MalformedURLException, IOException {
-		URL target = new URL(url);
-		String request = craftHTTPRequest(target, HTTP.GET);
-		List<String> lines = fetchLines(target, request);
-
-		int start = 0;
-		int end = lines.size();
-
-		// Determines start of HTML versus headers.
-		while (!lines.get(start).trim().isEmpty() && start < end) {
-			start++;
-		}
+		HTTPResponse response = fetch(new URL(url), HTTP.GET, new HashMap<String, String>(), HTTPResponse::isHTML);
 
 		// Double-check this is an HTML file.
-		Map<String, String> fields = parseHeaders(lines.subList(0, start + 1));
-		String type = fields.get("Content-Type");
-
-		if (type != null && type.toLowerCase().contains("html")) {
-			return String.join(System.lineSeparator(), lines.subList(start + 1, end));
+		if (response.isHTML()) {
+			return response.text();
 		}
 
 		return null;
@@ -201,11 +604,8 @@ public class HTTPFetcher {
 	 */
 	public static Map<String, String> getHeaderFields(String url)
 			throws UnknownHostException, MalformedURLException, IOException {
-		URL target = new URL(url);
-		String request = craftHTTPRequest(target, HTTP.HEAD);
-		List<String> lines = fetchLines(target, request);
-
-		return parseHeaders(lines);
+		HTTPResponse response = fetch(new URL(url), HTTP.HEAD);
+		return parseHeaders(response.headerLines());
 	}
 
 	// public static void main(String[] args) throws Exception {
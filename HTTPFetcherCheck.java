@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Checks that {@link HTTPFetcher} handles malformed and hostile responses by
+ * throwing an {@link IOException}, never an unchecked exception that would
+ * kill the crawler task running the fetch. Each case is served once from a
+ * local socket. Prints the outcome of every case and exits with status 1 if
+ * any of them failed.
+ *
+ * Usage: {@code java HTTPFetcherCheck}
+ */
+public class HTTPFetcherCheck {
+
+	/** Headers of a chunked HTML response, up to the first chunk. */
+	private static final String CHUNKED = "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n"
+			+ "Transfer-Encoding: chunked\r\n\r\n";
+
+	private static int failures = 0;
+
+	/**
+	 * Runs every case.
+	 *
+	 * @param args
+	 *            unused
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		expect("well-formed chunked body", CHUNKED + "5\r\nhello\r\n0\r\n\r\n", "hello");
+		expect("negative chunk size", CHUNKED + "-5\r\nhello\r\n0\r\n\r\n", null);
+		expect("signed chunk size", CHUNKED + "+5\r\nhello\r\n0\r\n\r\n", null);
+		expect("chunk size too large for a long", CHUNKED + "fffffffffffffffffff\r\nhello\r\n0\r\n\r\n", null);
+		expect("chunk size that is not hexadecimal", CHUNKED + "5z\r\nhello\r\n0\r\n\r\n", null);
+		expect("header line that never ends", "HTTP/1.1 200 OK\r\nX-Long: " + repeat('a', 1 << 16), null);
+
+		// a small gzip member followed by more trailing bytes than the limit allows
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		gzipped.write("HTTP/1.1 200 OK\r\nContent-Type: text/html\r\nContent-Encoding: gzip\r\n\r\n"
+				.getBytes(StandardCharsets.ISO_8859_1));
+		try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+			gzip.write("hello".getBytes(StandardCharsets.ISO_8859_1));
+		}
+		ByteArrayOutputStream trailing = new ByteArrayOutputStream();
+		trailing.write(gzipped.toByteArray());
+		trailing.write(new byte[(int) HTTPFetcher.DEFAULT_MAX_BYTES + 1]);
+		expect("gzip body with unlimited trailing data", trailing.toByteArray(), null);
+
+		System.out.println(failures == 0 ? "All cases passed." : failures + " cases failed.");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Fetches a response served once from a local socket and checks the
+	 * outcome.
+	 *
+	 * @param name
+	 *            description of the case
+	 * @param response
+	 *            raw response to send
+	 * @param expected
+	 *            expected body, or null if the fetch should throw an
+	 *            IOException
+	 * @throws IOException
+	 */
+	private static void expect(String name, String response, String expected) throws IOException {
+		expect(name, response.getBytes(StandardCharsets.ISO_8859_1), expected);
+	}
+
+	/**
+	 * Fetches a response served once from a local socket and checks the
+	 * outcome.
+	 *
+	 * @param name
+	 *            description of the case
+	 * @param response
+	 *            raw response to send
+	 * @param expected
+	 *            expected body, or null if the fetch should throw an
+	 *            IOException
+	 * @throws IOException
+	 */
+	private static void expect(String name, byte[] response, String expected) throws IOException {
+		try (ServerSocket server = new ServerSocket(0)) {
+			Thread thread = new Thread(() -> serve(server, response));
+			thread.setDaemon(true);
+			thread.start();
+
+			String outcome;
+			boolean passed;
+			try {
+				HTTPResponse fetched = HTTPFetcher.fetch(new URL("http://127.0.0.1:" + server.getLocalPort() + "/"),
+						HTTPFetcher.HTTP.GET);
+				outcome = "body \"" + fetched.text() + "\"";
+				passed = expected != null && expected.equals(fetched.text());
+			} catch (IOException e) {
+				outcome = "IOException: " + e.getMessage();
+				passed = expected == null;
+			} catch (RuntimeException e) {
+				outcome = e.toString();
+				passed = false;
+			}
+
+			if (!passed) {
+				failures++;
+			}
+			System.out.printf("%s %s: %s%n", passed ? "PASS" : "FAIL", name, outcome);
+		}
+	}
+
+	/**
+	 * Answers one request with a raw response, then closes the connection.
+	 *
+	 * @param server
+	 *            socket to accept the connection on
+	 * @param response
+	 *            raw response to send
+	 */
+	private static void serve(ServerSocket server, byte[] response) {
+		try (Socket socket = server.accept()) {
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+			String line;
+			while ((line = reader.readLine()) != null && !line.isEmpty()) {
+				// the request is not needed
+			}
+			OutputStream out = socket.getOutputStream();
+			out.write(response);
+			out.flush();
+		} catch (IOException e) {
+			// the fetcher may close the connection first
+		}
+	}
+
+	/**
+	 * Repeats a character.
+	 *
+	 * @param c
+	 *            character to repeat
+	 * @param times
+	 *            number of copies
+	 * @return copies of the character
+	 */
+	private static String repeat(char c, int times) {
+		StringBuilder builder = new StringBuilder(times);
+		for (int i = 0; i < times; i++) {
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,162 @@
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stores the status, header fields, and body of a single HTTP response.
+ */
+public class HTTPResponse {
+
+	private final String status;
+	private final int code;
+	private final List<String> headerLines;
+	private final TreeMap<String, String> fields;
+	private final byte[] body;
+
+	/**
+	 * Creates a new HTTPResponse instance.
+	 *
+	 * @param headerLines
+	 *            status line followed by the header lines
+	 * @param body
+	 *            raw body bytes
+	 */
+	public HTTPResponse(List<String> headerLines, byte[] body) {
+		this.headerLines = Collections.unmodifiableList(headerLines);
+		this.fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		this.body = body;
+
+		String statusLine = headerLines.isEmpty() ? "" : headerLines.get(0);
+		String[] parts = statusLine.split(" ", 2);
+		this.status = parts.length == 2 ? parts[1].trim() : "";
+		this.code = parseCode(status);
+
+		for (String line : headerLines.subList(Math.min(1, headerLines.size()), headerLines.size())) {
+			String[] pair = line.split(":", 2);
+			if (pair.length == 2) {
+				String name = pair[0].trim();
+				String value = pair[1].trim();
+				// repeated fields are combined as allowed by RFC 7230 section 3.2.2
+				fields.merge(name, value, (a, b) -> a + ", " + b);
+			}
+		}
+	}
+
+	/**
+	 * Returns the status code and reason phrase, such as "200 OK".
+	 *
+	 * @return status
+	 */
+	public String status() {
+		return status;
+	}
+
+	/**
+	 * Returns the numeric status code.
+	 *
+	 * @return status code, or -1 if the status line could not be parsed
+	 */
+	public int code() {
+		return code;
+	}
+
+	/**
+	 * Returns the value of a header field, ignoring case in the name.
+	 *
+	 * @param name
+	 *            header field name
+	 * @return value of the field, or null if it is missing
+	 */
+	public String header(String name) {
+		return fields.get(name);
+	}
+
+	/**
+	 * Returns the header field names mapped to their values.
+	 *
+	 * @return case-insensitive map of header fields
+	 */
+	public Map<String, String> headers() {
+		return Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * Returns the status line followed by the header lines, as received.
+	 *
+	 * @return header lines
+	 */
+	public List<String> headerLines() {
+		return headerLines;
+	}
+
+	/**
+	 * Returns the raw body bytes.
+	 *
+	 * @return body
+	 */
+	public byte[] body() {
+		return body;
+	}
+
+	/**
+	 * Returns the body decoded using the charset in the Content-Type header,
+	 * or UTF-8 if no valid charset is specified.
+	 *
+	 * @return body as text
+	 */
+	public String text() {
+		return new String(body, charset());
+	}
+
+	/**
+	 * Checks if the Content-Type header describes an HTML document.
+	 *
+	 * @return true if the body is HTML
+	 */
+	public boolean isHTML() {
+		String type = header("Content-Type");
+		return type != null && type.toLowerCase().contains("html");
+	}
+
+	/**
+	 * Returns the charset in the Content-Type header.
+	 *
+	 * @return charset of the body, or UTF-8 if none or an invalid one is given
+	 */
+	public Charset charset() {
+		String type = header("Content-Type");
+		if (type != null) {
+			for (String parameter : type.split(";")) {
+				String[] pair = parameter.trim().split("=", 2);
+				if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+					try {
+						return Charset.forName(pair[1].trim().replace("\"", ""));
+					} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+						break;
+					}
+				}
+			}
+		}
+		return Charset.forName("UTF-8");
+	}
+
+	/**
+	 * Parses the numeric code at the start of the status.
+	 *
+	 * @param status
+	 *            status code and reason phrase
+	 * @return status code, or -1 if it could not be parsed
+	 */
+	private static int parseCode(String status) {
+		int end = status.indexOf(' ');
+		try {
+			return Integer.parseInt(end < 0 ? status : status.substring(0, end));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in the style of HdrHistogram. Each power of two is
+ * split into a fixed number of equal buckets, so every recorded value is kept
+ * to within about 3% no matter how large it is, in a fixed amount of memory.
+ * Recording is lock-free and safe to do from many threads at once, and reading
+ * while others record gives a close but not atomic view.
+ *
+ * @see <a href="http://hdrhistogram.org/">HdrHistogram</a>
+ */
+public class Histogram {
+
+	/** Number of bits of each value kept exactly. */
+	private static final int PRECISION = 5;
+
+	/** Number of buckets in each power of two. */
+	private static final int SUB_BUCKETS = 1 << PRECISION;
+
+	/** Number of buckets needed for any positive long. */
+	private static final int BUCKETS = SUB_BUCKETS + (63 - PRECISION) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder total;
+	private final AtomicLong max;
+
+	/**
+	 * Initializes an empty histogram.
+	 */
+	public Histogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.total = new LongAdder();
+		this.max = new AtomicLong(0);
+	}
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 *            duration in nanoseconds; negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		total.add(value);
+		if (value > max.get()) {
+			max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * Returns the number of durations recorded.
+	 *
+	 * @return count
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the average duration recorded.
+	 *
+	 * @return mean in milliseconds, or 0 if nothing was recorded
+	 */
+	public double mean() {
+		long n = count.sum();
+		return n > 0 ? total.sum() / 1e6 / n : 0;
+	}
+
+	/**
+	 * Returns the longest duration recorded.
+	 *
+	 * @return maximum in milliseconds
+	 */
+	public double max() {
+		return max.get() / 1e6;
+	}
+
+	/**
+	 * Returns the duration that the given percentage of recorded durations are
+	 * no longer than, to within the precision of the histogram.
+	 *
+	 * @param percent
+	 *            percentile from 0 to 100
+	 * @return duration in milliseconds, or 0 if nothing was recorded
+	 */
+	public double percentile(double percent) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percent)) / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), max.get()) / 1e6;
+			}
+		}
+		return max();
+	}
+
+	/**
+	 * Returns a one-line summary of the histogram.
+	 *
+	 * @return count, mean, common percentiles, and maximum
+	 */
+	@Override
+	public String toString() {
+		return String.format("n=%d mean %.2f p50 %.2f p90 %.2f p99 %.2f max %.2f ms", count(), mean(),
+				percentile(50), percentile(90), percentile(99), max());
+	}
+
+	/**
+	 * Finds the bucket a value belongs in. Values below {@link #SUB_BUCKETS}
+	 * each get their own bucket, and each larger power of two is split into
+	 * {@link #SUB_BUCKETS} buckets using the bits after its highest one.
+	 *
+	 * @param value
+	 *            non-negative value
+	 * @return index of the bucket
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - PRECISION;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest value that belongs in a bucket.
+	 *
+	 * @param bucket
+	 *            index of the bucket
+	 * @return largest value of the bucket
+	 */
+	private static long highest(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowest = (long) (SUB_BUCKETS + sub) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
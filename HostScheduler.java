@@ -0,0 +1,244 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
+
+/**
+ * Schedules tasks that each talk to a single host, so that no host gets more
+ * than a fixed number of concurrent tasks or has tasks started closer together
+ * than a minimum delay. Each host keeps its own queue ordered by priority, and
+ * hosts with waiting tasks take turns in round-robin order, so one slow or
+ * large site cannot take over every worker.
+ */
+public class HostScheduler {
+
+	private final Executor queue;
+	private final int maxActive;
+	private final HashMap<String, HostQueue> hosts;
+	private final ArrayDeque<HostQueue> ready;
+	private final Timer timer;
+
+	private long delay;
+	private int hostLimit;
+	private int active;
+	private long sequence;
+
+	/** Time of the next scheduled wake-up, or 0 if none is scheduled. */
+	private long wakeup;
+
+	/**
+	 * Initializes a scheduler.
+	 *
+	 * @param queue
+	 *            executor that runs the tasks, such as a work queue
+	 * @param maxActive
+	 *            maximum number of tasks running or waiting in the executor at
+	 *            once, usually its number of threads
+	 * @param delay
+	 *            minimum time in milliseconds between the start of two tasks
+	 *            for the same host
+	 * @param hostLimit
+	 *            maximum number of concurrent tasks for the same host
+	 */
+	public HostScheduler(Executor queue, int maxActive, long delay, int hostLimit) {
+		this.queue = queue;
+		this.maxActive = Math.max(1, maxActive);
+		this.hosts = new HashMap<>();
+		this.ready = new ArrayDeque<>();
+		this.timer = new Timer("HostScheduler", true);
+		this.delay = Math.max(0, delay);
+		this.hostLimit = Math.max(1, hostLimit);
+		this.active = 0;
+		this.sequence = 0;
+		this.wakeup = 0;
+	}
+
+	/**
+	 * Changes the politeness limits used for tasks started from now on.
+	 *
+	 * @param delay
+	 *            minimum time in milliseconds between the start of two tasks
+	 *            for the same host
+	 * @param hostLimit
+	 *            maximum number of concurrent tasks for the same host
+	 */
+	public synchronized void setPoliteness(long delay, int hostLimit) {
+		this.delay = Math.max(0, delay);
+		this.hostLimit = Math.max(1, hostLimit);
+	}
+
+	/**
+	 * Adds a task for a host. Tasks for the same host run in order of
+	 * priority, lowest first, and in the order they were added otherwise.
+	 *
+	 * @param host
+	 *            host the task will contact
+	 * @param priority
+	 *            priority of the task, such as its crawl depth
+	 * @param task
+	 *            task to run
+	 */
+	public void add(String host, int priority, Runnable task) {
+		synchronized (this) {
+			String key = host.toLowerCase();
+			HostQueue hostQueue = hosts.get(key);
+			if (hostQueue == null) {
+				hostQueue = new HostQueue();
+				hosts.put(key, hostQueue);
+			}
+
+			hostQueue.tasks.add(new Entry(priority, sequence++, task));
+			if (!hostQueue.queued) {
+				hostQueue.queued = true;
+				ready.addLast(hostQueue);
+			}
+		}
+		dispatch();
+	}
+
+	/**
+	 * Returns the number of tasks waiting to be started.
+	 *
+	 * @return number of waiting tasks
+	 */
+	public synchronized int waiting() {
+		int waiting = 0;
+		for (HostQueue hostQueue : ready) {
+			waiting += hostQueue.tasks.size();
+		}
+		return waiting;
+	}
+
+	/**
+	 * Stops the wake-up timer. Waiting tasks will not be started.
+	 */
+	public void shutdown() {
+		timer.cancel();
+	}
+
+	/**
+	 * Starts every task that is allowed to run now, visiting the hosts in
+	 * round-robin order. If a host is only waiting on its delay, schedules a
+	 * wake-up for when the earliest such host becomes eligible.
+	 */
+	private synchronized void dispatch() {
+		long now = System.currentTimeMillis();
+		long earliest = Long.MAX_VALUE;
+		boolean progress = true;
+
+		while (progress && active < maxActive) {
+			progress = false;
+			earliest = Long.MAX_VALUE;
+
+			int turns = ready.size();
+			for (int i = 0; i < turns && active < maxActive; i++) {
+				HostQueue hostQueue = ready.pollFirst();
+
+				if (hostQueue.active < hostLimit) {
+					if (hostQueue.next <= now) {
+						Entry entry = hostQueue.tasks.poll();
+						hostQueue.active++;
+						hostQueue.next = now + delay;
+						active++;
+						queue.execute(new HostTask(hostQueue, entry.task));
+						progress = true;
+					} else {
+						earliest = Math.min(earliest, hostQueue.next);
+					}
+				}
+
+				if (hostQueue.tasks.isEmpty()) {
+					hostQueue.queued = false;
+				} else {
+					ready.addLast(hostQueue);
+				}
+			}
+		}
+
+		if (earliest != Long.MAX_VALUE && active < maxActive && (wakeup == 0 || earliest < wakeup)) {
+			wakeup = earliest;
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					synchronized (HostScheduler.this) {
+						wakeup = 0;
+					}
+					dispatch();
+				}
+			}, Math.max(1, earliest - now));
+		}
+	}
+
+	/**
+	 * Marks a task for the host as finished, and starts any tasks that were
+	 * waiting on it.
+	 *
+	 * @param hostQueue
+	 *            host the task contacted
+	 */
+	private void done(HostQueue hostQueue) {
+		synchronized (this) {
+			hostQueue.active--;
+			active--;
+		}
+		dispatch();
+	}
+
+	/**
+	 * Tasks waiting for a single host, along with how many of its tasks are
+	 * running and when the next one may start.
+	 */
+	private static class HostQueue {
+		private final PriorityQueue<Entry> tasks = new PriorityQueue<>();
+		private int active = 0;
+		private long next = 0;
+		private boolean queued = false;
+	}
+
+	/**
+	 * A waiting task, ordered by priority and then by the order it was added.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private final int priority;
+		private final long sequence;
+		private final Runnable task;
+
+		private Entry(int priority, long sequence, Runnable task) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			if (this.priority != o.priority) {
+				return Integer.compare(this.priority, o.priority);
+			}
+			return Long.compare(this.sequence, o.sequence);
+		}
+	}
+
+	/**
+	 * Runs a task and then releases its host.
+	 */
+	private class HostTask implements Runnable {
+		private final HostQueue hostQueue;
+		private final Runnable task;
+
+		private HostTask(HostQueue hostQueue, Runnable task) {
+			this.hostQueue = hostQueue;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				done(hostQueue);
+			}
+		}
+	}
+}
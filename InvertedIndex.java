@@ -2,21 +2,58 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Keeps a mapping of words to the files they were found in and all of the
- * positions in those files.
+ * positions in those files. A frequency-only index keeps just the number of
+ * times and first position each word was found in each file instead.
  */
 public class InvertedIndex {
 
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final TreeMap<String, TreeMap<String, Posting>> index;
+
+	/** Whether every position is stored, or only frequencies. */
+	private final boolean positions;
+
+	/** Number of times the index has been changed. */
+	private volatile long version;
 
 	/**
 	 * Initializes the inverted index.
 	 */
 	public InvertedIndex() {
+		this(true);
+	}
+
+	/**
+	 * Initializes the inverted index.
+	 *
+	 * @param positions
+	 *            true to store every position, false to store only the
+	 *            frequency and first position of each word in each file
+	 */
+	public InvertedIndex(boolean positions) {
 		index = new TreeMap<>();
+		this.positions = positions;
+		this.version = 0;
+	}
+
+	/**
+	 * Returns whether this index stores every position, or only frequencies.
+	 *
+	 * @return true if every position is stored
+	 */
+	public boolean storesPositions() {
+		return positions;
+	}
+
+	/**
+	 * Creates an empty posting of the kind stored by this index.
+	 *
+	 * @return new posting
+	 */
+	private Posting newPosting() {
+		return positions ? new PositionPosting() : new FrequencyPosting();
 	}
 
 	/**
@@ -33,13 +70,17 @@ public class InvertedIndex {
 	 *
 	 */
 	private void addHelper(String word, String fileName, int position) {
-		if (!index.containsKey(word)) {
-			index.put(word, new TreeMap<>());
+		TreeMap<String, Posting> files = index.get(word);
+		if (files == null) {
+			files = new TreeMap<>();
+			index.put(word, files);
 		}
-		if (index.get(word).get(fileName) == null) {
-			index.get(word).put(fileName, new TreeSet<>());
+		Posting posting = files.get(fileName);
+		if (posting == null) {
+			posting = newPosting();
+			files.put(fileName, posting);
 		}
-		index.get(word).get(fileName).add(position);
+		posting.add(position);
 	}
 
 	/**
@@ -58,6 +99,7 @@ public class InvertedIndex {
 	 */
 	public void add(String word, String fileName, int position) {
 		addHelper(word, fileName, position);
+		version++;
 	}
 
 	/**
@@ -75,35 +117,65 @@ public class InvertedIndex {
 			this.addHelper(word, htmlFile, position);
 			position++;
 		}
+		version++;
+	}
+
+	/**
+	 * Removes a file from the index, given the words that were added for it.
+	 * Words left without any files are removed entirely.
+	 *
+	 * @param words
+	 *            list of words that were added for the file
+	 *
+	 * @param htmlFile
+	 *            file to remove
+	 */
+	public void removeAll(String[] words, String htmlFile) {
+		for (String word : words) {
+			TreeMap<String, Posting> files = this.index.get(word);
+			if (files != null && files.remove(htmlFile) != null && files.isEmpty()) {
+				this.index.remove(word);
+			}
+		}
+		version++;
 	}
 
 	/**
 	 * Adds all data in other index that is not in this index to this index.
+	 * When both indexes store the same kind of posting, the other index's
+	 * postings are reused rather than copied.
 	 *
 	 * @param other
 	 *            other index
 	 *
 	 */
 	public void addAll(InvertedIndex other) {
+		boolean reuse = this.positions == other.positions;
 		for (String word : other.index.keySet()) {
-			if (!this.index.containsKey(word)) {
-				this.index.put(word, other.index.get(word));
+			TreeMap<String, Posting> otherFiles = other.index.get(word);
+			TreeMap<String, Posting> files = this.index.get(word);
+			if (files == null && reuse) {
+				this.index.put(word, otherFiles);
 			} else {
-				for (String path : other.index.get(word).keySet()) {
-					if (!this.index.get(word).containsKey(path)) {
-						TreeSet<Integer> positions = other.index.get(word).get(path);
-						this.index.get(word).put(path, positions);
+				if (files == null) {
+					files = new TreeMap<>();
+					this.index.put(word, files);
+				}
+				for (String path : otherFiles.keySet()) {
+					Posting posting = files.get(path);
+					if (posting == null && reuse) {
+						files.put(path, otherFiles.get(path));
 					} else {
-						TreeSet<Integer> positions = other.index.get(word).get(path);
-						// this.index.get(word).get(path).addAll(positions);
-						if (positions != null) {
-							this.index.get(word).get(path).addAll(positions);
+						if (posting == null) {
+							posting = newPosting();
+							files.put(path, posting);
 						}
-
+						posting.addAll(otherFiles.get(path));
 					}
 				}
 			}
 		}
+		version++;
 	}
 
 	/**
@@ -142,6 +214,29 @@ public class InvertedIndex {
 		return index.size();
 	}
 
+	/**
+	 * Returns the number of times the index has been changed, so that
+	 * structures built from the index can tell when they are out of date.
+	 *
+	 * @return version of the index
+	 */
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * Returns every word in the index and the number of files it was found in.
+	 *
+	 * @return sorted mapping from word to document frequency
+	 */
+	public TreeMap<String, Integer> documentFrequencies() {
+		TreeMap<String, Integer> frequencies = new TreeMap<>();
+		for (String word : index.keySet()) {
+			frequencies.put(word, index.get(word).size());
+		}
+		return frequencies;
+	}
+
 	/**
 	 * Returns the number of keys in the TreeMap value of the key word.
 	 *
@@ -159,20 +254,20 @@ public class InvertedIndex {
 	}
 
 	/**
-	 * Returns the number of positions in the TreeSet value from the key
+	 * Returns the number of positions in the posting value from the key
 	 * fileName, from the key word.
 	 *
 	 * @param word
-	 *            key of the TreeMap<String, TreeSet<Integer>>
+	 *            key of the TreeMap<String, Posting>
 	 * 
 	 * @param fileName
-	 *            key of the TreeSet<Integer>
+	 *            key of the Posting
 	 *
-	 * @return number of positions found in the TreeSet
+	 * @return number of times the word was found in the file
 	 */
 	public int numPositions(String word, String fileName) {
 		if (index.containsKey(word) && index.get(word).containsKey(fileName)) {
-			return index.get(word).get(fileName).size();
+			return index.get(word).get(fileName).frequency();
 		} else {
 			return 0;
 		}
@@ -200,9 +295,11 @@ public class InvertedIndex {
 	 * @return list of results
 	 */
 	private ArrayList<Result> addResults(String word, TreeMap<String, Result> map, ArrayList<Result> results) {
-		for (String file : index.get(word).keySet()) {
-			int freq = index.get(word).get(file).size();
-			int initial = index.get(word).get(file).first();
+		TreeMap<String, Posting> files = index.get(word);
+		for (String file : files.keySet()) {
+			Posting posting = files.get(file);
+			int freq = posting.frequency();
+			int initial = posting.first();
 			if (!map.containsKey(file)) {
 				Result result = new Result(freq, initial, file);
 				map.put(file, result);
@@ -224,10 +321,28 @@ public class InvertedIndex {
 	 * @return list of results
 	 */
 	public ArrayList<Result> exactSearch(String[] queries) {
+		return exactSearch(queries, null);
+	}
+
+	/**
+	 * Takes in parsed queries and returns a list of results that match the
+	 * queries exactly, stopping early with the results found so far if the
+	 * deadline passes.
+	 *
+	 * @param queries
+	 *            parsed queries
+	 * @param deadline
+	 *            deadline to stop at, or null for none
+	 * @return list of results
+	 */
+	public ArrayList<Result> exactSearch(String[] queries, Deadline deadline) {
 		ArrayList<Result> results = new ArrayList<>();
 		TreeMap<String, Result> map = new TreeMap<>();
 
 		for (String query : queries) {
+			if (deadline != null && deadline.expired()) {
+				break;
+			}
 			if (index.containsKey(query)) {
 				results = addResults(query, map, results);
 			}
@@ -246,13 +361,32 @@ public class InvertedIndex {
 	 * @return list of results
 	 */
 	public ArrayList<Result> partialSearch(String[] queries) {
+		return partialSearch(queries, null);
+	}
+
+	/**
+	 * Takes in parsed queries and returns a list of results that start with the
+	 * queries, stopping early with the results of the words found so far if
+	 * the deadline passes. A short prefix can match a large part of the index,
+	 * so this keeps the time a search takes bounded.
+	 *
+	 * @param queries
+	 *            parsed queries
+	 * @param deadline
+	 *            deadline to stop at, or null for none
+	 * @return list of results
+	 */
+	public ArrayList<Result> partialSearch(String[] queries, Deadline deadline) {
 		ArrayList<Result> results = new ArrayList<>();
 		TreeMap<String, Result> map = new TreeMap<>();
 
-		for (String query : queries) {
+		search: for (String query : queries) {
 			if (!query.isEmpty()) {
 				for (String word = index.ceilingKey(query); word != null
 						&& word.startsWith(query); word = index.higherKey(word)) {
+					if (deadline != null && deadline.expired()) {
+						break search;
+					}
 					results = addResults(word, map, results);
 				}
 			}
@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -40,6 +41,47 @@ public class JSONWriter {
 		return String.format("\"%s\"", text);
 	}
 
+	/**
+	 * Returns a quoted version of the provided text, escaping any quotes,
+	 * backslashes, and control characters so the result is always valid JSON.
+	 *
+	 * @param text
+	 *            text to escape and surround in quotes
+	 * @return escaped text surrounded by quotes
+	 */
+	public static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length() + 2);
+		escaped.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				escaped.append("\\\"");
+				break;
+			case '\\':
+				escaped.append("\\\\");
+				break;
+			case '\n':
+				escaped.append("\\n");
+				break;
+			case '\r':
+				escaped.append("\\r");
+				break;
+			case '\t':
+				escaped.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+					escaped.append(String.format("\\u%04x", (int) c));
+				} else {
+					escaped.append(c);
+				}
+			}
+		}
+		escaped.append('"');
+		return escaped.toString();
+	}
+
 	/**
 	 * Writes the set of elements as a JSON array at the specified indent level.
 	 *
@@ -152,7 +194,9 @@ public class JSONWriter {
 
 	/**
 	 * Writes the set of elements as a JSON object with a nested object with a
-	 * set of elements with a nested array to the path using UTF8.
+	 * set of elements with a nested array to the path using UTF8. Postings
+	 * that do not store positions are written as an object with their count
+	 * and initial index instead of an array.
 	 *
 	 * @param index
 	 *            elements to write as a JSON object with a nested object with a
@@ -160,7 +204,7 @@ public class JSONWriter {
 	 * @param path
 	 *            path to write file
 	 */
-	public static void asInvertedIndex(TreeMap<String, TreeMap<String, TreeSet<Integer>>> index, Path path) {
+	public static void asInvertedIndex(TreeMap<String, TreeMap<String, Posting>> index, Path path) {
 
 		try (BufferedWriter writer = Files.newBufferedWriter(path, Charset.forName("UTF-8"))) {
 
@@ -177,20 +221,32 @@ public class JSONWriter {
 				for (String file : index.get(word).keySet()) {
 					k = 0;
 					int numFiles = index.get(word).keySet().size();
-					writer.write(indent(2) + quote(file) + ": [");
-					writer.newLine();
-					for (Integer pos : index.get(word).get(file)) {
-						int numPos = index.get(word).get(file).size();
-						writer.write(indent(3) + pos.toString());
-						if (k == numPos - 1 || numPos == 1) {
-							writer.newLine();
-						} else {
-							writer.write(",");
-							writer.newLine();
+					Posting posting = index.get(word).get(file);
+					TreeSet<Integer> positions = posting.positions();
+					if (positions == null) {
+						writer.write(indent(2) + quote(file) + ": {");
+						writer.newLine();
+						writer.write(indent(3) + quote("count") + ": " + posting.frequency() + ",");
+						writer.newLine();
+						writer.write(indent(3) + quote("index") + ": " + posting.first());
+						writer.newLine();
+						writer.write(indent(2) + "}");
+					} else {
+						writer.write(indent(2) + quote(file) + ": [");
+						writer.newLine();
+						for (Integer pos : positions) {
+							int numPos = positions.size();
+							writer.write(indent(3) + pos.toString());
+							if (k == numPos - 1 || numPos == 1) {
+								writer.newLine();
+							} else {
+								writer.write(",");
+								writer.newLine();
+							}
+							k++;
 						}
-						k++;
+						writer.write(indent(2) + "]");
 					}
-					writer.write(indent(2) + "]");
 					if (j == numFiles - 1 || numFiles == 1) {
 						writer.newLine();
 					} else {
@@ -270,4 +326,74 @@ public class JSONWriter {
 			System.out.println("ERROR: Invalid path to print results.");
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes one page of the results of a search as a JSON object, streaming
+	 * each result to the writer as it goes rather than building the whole
+	 * response in memory first.
+	 *
+	 * @param writer
+	 *            writer to use for output
+	 * @param query
+	 *            cleaned query the results are for
+	 * @param exact
+	 *            true if the search was exact, false if partial
+	 * @param results
+	 *            every result of the search, sorted
+	 * @param complete
+	 *            false if the search stopped at its deadline, so these are
+	 *            only the results found before then
+	 * @param offset
+	 *            index of the first result to write
+	 * @param k
+	 *            most results to write
+	 * @throws IOException
+	 */
+	public static void asSearchResults(Writer writer, String query, boolean exact, List<Result> results,
+			boolean complete, int offset, int k) throws IOException {
+		int end = (int) Math.min(results.size(), (long) offset + k);
+		writer.write("{\n");
+		writer.write(indent(1) + quote("query") + ": " + escape(query) + ",\n");
+		writer.write(indent(1) + quote("mode") + ": " + quote(exact ? "exact" : "partial") + ",\n");
+		writer.write(indent(1) + quote("offset") + ": " + offset + ",\n");
+		writer.write(indent(1) + quote("k") + ": " + k + ",\n");
+		writer.write(indent(1) + quote("total") + ": " + results.size() + ",\n");
+		writer.write(indent(1) + quote("complete") + ": " + complete + ",\n");
+		writer.write(indent(1) + quote("results") + ": [");
+		for (int i = offset; i < end; i++) {
+			Result r = results.get(i);
+			writer.write(i == offset ? "\n" : ",\n");
+			writer.write(indent(2) + "{");
+			writer.write(quote("where") + ": " + escape(r.path()) + ", ");
+			writer.write(quote("count") + ": " + r.frequency() + ", ");
+			writer.write(quote("index") + ": " + r.initialPos());
+			writer.write("}");
+		}
+		writer.write(end > offset ? "\n" + indent(1) + "]\n" : "]\n");
+		writer.write("}\n");
+	}
+
+	/**
+	 * Writes the suggested completions of a partly typed query as a JSON
+	 * object.
+	 *
+	 * @param writer
+	 *            writer to use for output
+	 * @param query
+	 *            cleaned text the suggestions complete
+	 * @param suggestions
+	 *            suggested queries, best first
+	 * @throws IOException
+	 */
+	public static void asSuggestions(Writer writer, String query, List<String> suggestions) throws IOException {
+		writer.write("{\n");
+		writer.write(indent(1) + quote("query") + ": " + escape(query) + ",\n");
+		writer.write(indent(1) + quote("suggestions") + ": [");
+		for (int i = 0; i < suggestions.size(); i++) {
+			writer.write(i == 0 ? "\n" : ",\n");
+			writer.write(indent(2) + escape(suggestions.get(i)));
+		}
+		writer.write(suggestions.isEmpty() ? "]\n" : "\n" + indent(1) + "]\n");
+		writer.write("}\n");
+	}
+}
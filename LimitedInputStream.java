@@ -0,0 +1,86 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with an {@link IOException} once more than a fixed number of bytes
+ * have been read from the wrapped stream, so a single response cannot use an
+ * unbounded amount of memory.
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+	private final long limit;
+	private final String description;
+	private long count;
+
+	/**
+	 * Initializes a limited stream.
+	 *
+	 * @param in
+	 *            stream to read from
+	 * @param limit
+	 *            maximum number of bytes that may be read
+	 * @param description
+	 *            what is being counted, used in the exception message
+	 */
+	public LimitedInputStream(InputStream in, long limit, String description) {
+		super(in);
+		this.limit = limit;
+		this.description = description;
+		this.count = 0;
+	}
+
+	/**
+	 * Returns the number of bytes read so far.
+	 *
+	 * @return bytes read
+	 */
+	public long count() {
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			add(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		if (read > 0) {
+			add(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		add(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Counts bytes read, failing if the limit is exceeded.
+	 *
+	 * @param read
+	 *            number of bytes just read
+	 * @throws IOException
+	 *             if the limit is exceeded
+	 */
+	private void add(long read) throws IOException {
+		count += read;
+		if (count > limit) {
+			throw new IOException(description + " exceeded " + limit + " bytes.");
+		}
+	}
+}
@@ -23,6 +23,10 @@ public class LinkParser {
 		OPTIONS, GET, HEAD, POST, PUT, DELETE, TRACE, CONNECT
 	};
 
+	/** Matches the href attribute of an anchor tag, compiled once. */
+	private static final Pattern ANCHOR = Pattern.compile("<a[^>]*\\s*href\\s*=\\s*\"\\s*(.*?)\\s*\"\\s*",
+			Pattern.CASE_INSENSITIVE);
+
 	/**
 	 * Removes the fragment component of a URL (if present), and properly
 	 * encodes the query string (if necessary).
@@ -40,6 +44,30 @@ public class LinkParser {
 		}
 	}
 
+	/**
+	 * Returns the canonical form of a URL used to detect duplicate links. The
+	 * protocol and host are lowercased, the default port is removed, an empty
+	 * path becomes "/", and the fragment is dropped. No host names are
+	 * resolved.
+	 *
+	 * @param url
+	 *            url to canonicalize
+	 * @return canonical url text
+	 */
+	public static String canonicalize(URL url) {
+		String protocol = url.getProtocol().toLowerCase();
+		String host = url.getHost().toLowerCase();
+		int port = url.getPort() == url.getDefaultPort() ? -1 : url.getPort();
+		String file = url.getFile().isEmpty() ? "/" : url.getFile();
+
+		StringBuilder canonical = new StringBuilder(protocol.length() + host.length() + file.length() + 10);
+		canonical.append(protocol).append("://").append(host);
+		if (port >= 0) {
+			canonical.append(':').append(port);
+		}
+		return canonical.append(file).toString();
+	}
+
 	public static List<String> fetchLines(URL url, String request) throws UnknownHostException, IOException {
 		ArrayList<String> lines = new ArrayList<>();
 		int port = url.getPort() < 0 ? 80 : url.getPort();
@@ -94,13 +122,13 @@ public class LinkParser {
 	 * @param html
 	 *            raw html associated with the base url
 	 * @return cleaned list of all http(s) links in the order they were found
+	 *
+	 * @see PageParser
 	 */
 	public static ArrayList<URL> listLinks(URL base, String html) {
 		ArrayList<URL> links = new ArrayList<>();
-		String regex = "<a[^>]*\\s*href\\s*=\\s*\"\\s*(.*?)\\s*\"\\s*";
-		Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
 		if (html != null) {
-			Matcher matcher = pattern.matcher(html);
+			Matcher matcher = ANCHOR.matcher(html);
 
 			while (matcher.find()) {
 				try {
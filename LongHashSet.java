@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs using open addressing, which stores each value in 8
+ * to 16 bytes instead of the 40 or more bytes of a boxed {@link Long} in a
+ * {@link java.util.HashSet}. This class is not thread-safe.
+ */
+public class LongHashSet {
+
+	/** Marks an empty slot. Zero itself is tracked separately. */
+	private static final long EMPTY = 0;
+
+	private long[] table;
+	private int size;
+	private boolean hasZero;
+
+	/**
+	 * Initializes an empty set.
+	 */
+	public LongHashSet() {
+		table = new long[16];
+		size = 0;
+		hasZero = false;
+	}
+
+	/**
+	 * Adds the value to the set.
+	 *
+	 * @param value
+	 *            value to add
+	 * @return true if the value was not already in the set
+	 */
+	public boolean add(long value) {
+		if (value == EMPTY) {
+			boolean added = !hasZero;
+			hasZero = true;
+			return added;
+		}
+
+		int mask = table.length - 1;
+		int slot = mix(value) & mask;
+		while (table[slot] != EMPTY) {
+			if (table[slot] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		table[slot] = value;
+		size++;
+		if (size * 4 >= table.length * 3) {
+			resize();
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the value is in the set.
+	 *
+	 * @param value
+	 *            value to check
+	 * @return true if the value is in the set
+	 */
+	public boolean contains(long value) {
+		if (value == EMPTY) {
+			return hasZero;
+		}
+
+		int mask = table.length - 1;
+		int slot = mix(value) & mask;
+		while (table[slot] != EMPTY) {
+			if (table[slot] == value) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of values in the set.
+	 *
+	 * @return number of values
+	 */
+	public int size() {
+		return hasZero ? size + 1 : size;
+	}
+
+	/**
+	 * Returns the values in the set in ascending signed order.
+	 *
+	 * @return sorted values
+	 */
+	public long[] toSortedArray() {
+		long[] values = new long[size()];
+		int i = 0;
+		if (hasZero) {
+			values[i++] = 0;
+		}
+		for (long value : table) {
+			if (value != EMPTY) {
+				values[i++] = value;
+			}
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	/**
+	 * Removes every value from the set and releases its table.
+	 */
+	public void clear() {
+		table = new long[16];
+		size = 0;
+		hasZero = false;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the table in bytes.
+	 *
+	 * @return table size in bytes
+	 */
+	public long sizeInBytes() {
+		return (long) table.length * 8;
+	}
+
+	/**
+	 * Doubles the size of the table and reinserts every value.
+	 */
+	private void resize() {
+		long[] old = table;
+		table = new long[old.length * 2];
+		int mask = table.length - 1;
+		for (long value : old) {
+			if (value != EMPTY) {
+				int slot = mix(value) & mask;
+				while (table[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = value;
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of the value so that nearby values land in different
+	 * slots.
+	 *
+	 * @param value
+	 *            value to hash
+	 * @return slot hash
+	 */
+	private static int mix(long value) {
+		value *= 0x9e3779b97f4a7c15L;
+		return (int) (value ^ (value >>> 32));
+	}
+}
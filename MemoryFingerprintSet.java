@@ -0,0 +1,70 @@
+/**
+ * Keeps fingerprints in memory, split across several independently locked
+ * primitive hash sets so concurrent threads rarely contend.
+ */
+public class MemoryFingerprintSet implements FingerprintSet {
+
+	/** Number of independently locked stripes. Must be a power of two. */
+	private static final int STRIPES = 64;
+
+	private final LongHashSet[] stripes;
+
+	/**
+	 * Initializes an empty set.
+	 */
+	public MemoryFingerprintSet() {
+		stripes = new LongHashSet[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new LongHashSet();
+		}
+	}
+
+	@Override
+	public boolean contains(long fingerprint) {
+		LongHashSet stripe = stripe(fingerprint);
+		synchronized (stripe) {
+			return stripe.contains(fingerprint);
+		}
+	}
+
+	@Override
+	public void addNew(long fingerprint) {
+		LongHashSet stripe = stripe(fingerprint);
+		synchronized (stripe) {
+			stripe.add(fingerprint);
+		}
+	}
+
+	@Override
+	public long size() {
+		long size = 0;
+		for (LongHashSet stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public long sizeInBytes() {
+		long bytes = 0;
+		for (LongHashSet stripe : stripes) {
+			synchronized (stripe) {
+				bytes += stripe.sizeInBytes();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the stripe holding the fingerprint.
+	 *
+	 * @param fingerprint
+	 *            64-bit fingerprint
+	 * @return stripe for that fingerprint
+	 */
+	private LongHashSet stripe(long fingerprint) {
+		return stripes[(int) (fingerprint >>> 58) & (STRIPES - 1)];
+	}
+}
@@ -39,11 +39,12 @@ public class MultiThreadedQueryProcessor implements QueryProcessorInterface {
 	 */
 	public void processQueries(boolean exact, Path queryFile) {
 		try (BufferedReader reader = Files.newBufferedReader(queryFile, Charset.forName("UTF-8"))) {
+			TaskGroup group = new TaskGroup(queue, WorkQueue.Priority.BATCH);
 			String line = null;
 			while ((line = reader.readLine()) != null) {
-				queue.execute(new QueryTask(exact, line));
+				group.execute(new QueryTask(exact, line));
 			}
-			queue.finish();
+			group.finish();
 		} catch (IOException e) {
 			System.out.println("Error reading from query file.");
 		}
@@ -81,7 +82,7 @@ public class MultiThreadedQueryProcessor implements QueryProcessorInterface {
 
 		@Override
 		public void run() {
-			String[] cleanedWords = WordParser.parseWords(line);
+			String[] cleanedWords = WordParser.parseQuery(line);
 			String cleanedLine;
 
 			if (cleanedWords.length != 0) {
@@ -0,0 +1,378 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Parses the outgoing links and the visible text of an HTML page in a single
+ * scan over the document. Produces the same links as
+ * {@link LinkParser#listLinks(URL, String)} and the same text as
+ * {@link HTMLCleaner#stripHTML(String)} for well-formed pages, without
+ * compiling or running any regular expressions.
+ *
+ * Comments, tags, and entities are each replaced by a single space. The head,
+ * style, and script elements are removed along with their contents. Links are
+ * taken from the href attribute of anchor tags outside of those elements and
+ * comments.
+ */
+public class PageParser {
+
+	/** Elements removed along with everything between their tags. */
+	private static final String[] SKIPPED = { "head", "style", "script" };
+
+	/** Longest entity name, such as "&amp;CounterClockwiseContourIntegral;". */
+	private static final int MAX_ENTITY = 32;
+
+	private final ArrayList<URL> links;
+	private final String text;
+
+	/*
+	 * The last result of each forward search. Markup is parsed in order, so a
+	 * search from a later index can reuse the last result if it still lies
+	 * ahead, and a search that found nothing never needs to run again. This
+	 * keeps a page full of unclosed markup from being scanned once per '<'.
+	 */
+	private int closeFrom = Integer.MAX_VALUE;
+	private int close;
+	private int commentFrom = Integer.MAX_VALUE;
+	private int commentEnd;
+	private final int[] endTagFrom = new int[SKIPPED.length];
+	private final int[] endTagStart = new int[SKIPPED.length];
+	private final int[] endTagEnd = new int[SKIPPED.length];
+
+	/**
+	 * Parses a page.
+	 *
+	 * @param base
+	 *            url of the page, used to convert relative links to absolute
+	 * @param html
+	 *            raw html of the page
+	 */
+	public PageParser(URL base, String html) {
+		this.links = new ArrayList<>();
+		Arrays.fill(endTagFrom, Integer.MAX_VALUE);
+		StringBuilder text = new StringBuilder(html.length() / 2);
+
+		int i = 0;
+		int n = html.length();
+		while (i < n) {
+			char c = html.charAt(i);
+
+			if (c == '<') {
+				int next = parseMarkup(base, html, i);
+				if (next > i) {
+					text.append(' ');
+					i = next;
+					continue;
+				}
+			} else if (c == '&') {
+				int next = parseEntity(html, i);
+				if (next > i) {
+					text.append(' ');
+					i = next;
+					continue;
+				}
+			}
+
+			text.append(c);
+			i++;
+		}
+
+		this.text = text.toString();
+	}
+
+	/**
+	 * Returns all the HTTP(S) links found in the anchor tags of the page,
+	 * converted to absolute and cleaned.
+	 *
+	 * @return links in the order they were found
+	 */
+	public ArrayList<URL> links() {
+		return links;
+	}
+
+	/**
+	 * Returns the page without any HTML, CSS, or JavaScript.
+	 *
+	 * @return visible text of the page
+	 */
+	public String text() {
+		return text;
+	}
+
+	/**
+	 * Parses a comment, tag, or skipped element starting at a '&lt;', and adds
+	 * any link it holds.
+	 *
+	 * @param base
+	 *            url of the page
+	 * @param html
+	 *            raw html of the page
+	 * @param start
+	 *            index of the '&lt;'
+	 * @return index just past the markup, or start if it is not markup
+	 */
+	private int parseMarkup(URL base, String html, int start) {
+		if (html.startsWith("<!--", start)) {
+			int end = findCommentEnd(html, start + 4);
+			if (end >= 0) {
+				return end + 3;
+			}
+		}
+
+		int close = findClose(html, start + 1);
+		if (close < 0) {
+			return start;
+		}
+
+		int nameStart = start + 1;
+		if (nameStart < close && html.charAt(nameStart) == '/') {
+			return close + 1;
+		}
+
+		int nameEnd = nameStart;
+		while (nameEnd < close && isNameChar(html.charAt(nameEnd))) {
+			nameEnd++;
+		}
+
+		int length = nameEnd - nameStart;
+		if (length == 1 && (html.charAt(nameStart) == 'a' || html.charAt(nameStart) == 'A')) {
+			parseAnchor(base, html, nameEnd, close);
+		} else {
+			for (int s = 0; s < SKIPPED.length; s++) {
+				String name = SKIPPED[s];
+				if (length == name.length() && html.regionMatches(true, nameStart, name, 0, length)) {
+					int end = findEndTag(html, s, close + 1);
+					return end < 0 ? close + 1 : end;
+				}
+			}
+		}
+
+		return close + 1;
+	}
+
+	/**
+	 * Finds the next '&gt;', reusing the last search when possible.
+	 *
+	 * @param html
+	 *            raw html of the page
+	 * @param from
+	 *            index to start searching from, no less than the last
+	 * @return index of the '&gt;', or -1 if there is none
+	 */
+	private int findClose(String html, int from) {
+		if (from < closeFrom || (close >= 0 && close < from)) {
+			closeFrom = from;
+			close = html.indexOf('>', from);
+		}
+		return close;
+	}
+
+	/**
+	 * Finds the next "--&gt;", reusing the last search when possible.
+	 *
+	 * @param html
+	 *            raw html of the page
+	 * @param from
+	 *            index to start searching from, no less than the last
+	 * @return index of the "--&gt;", or -1 if there is none
+	 */
+	private int findCommentEnd(String html, int from) {
+		if (from < commentFrom || (commentEnd >= 0 && commentEnd < from)) {
+			commentFrom = from;
+			commentEnd = html.indexOf("-->", from);
+		}
+		return commentEnd;
+	}
+
+	/**
+	 * Finds the next end tag of a skipped element, reusing the last search
+	 * for that element when possible.
+	 *
+	 * @param html
+	 *            raw html of the page
+	 * @param skipped
+	 *            index of the element in {@link #SKIPPED}
+	 * @param from
+	 *            index to start searching from, no less than the last
+	 * @return index just past the end tag, or -1 if there is none
+	 */
+	private int findEndTag(String html, int skipped, int from) {
+		if (from < endTagFrom[skipped] || (endTagStart[skipped] >= 0 && endTagStart[skipped] < from)) {
+			endTagFrom[skipped] = from;
+			endTagStart[skipped] = findEndTag(html, SKIPPED[skipped], from);
+			endTagEnd[skipped] = endTagStart[skipped] < 0 ? -1 : endTagEnd(html, SKIPPED[skipped], endTagStart[skipped]);
+		}
+		return endTagEnd[skipped];
+	}
+
+	/**
+	 * Finds the end tag of an element, such as "&lt;/script&gt;".
+	 *
+	 * @param html
+	 *            raw html of the page
+	 * @param name
+	 *            name of the element
+	 * @param from
+	 *            index to start searching from
+	 * @return index of the "&lt;/" that starts the end tag, or -1 if there is
+	 *         none
+	 */
+	private static int findEndTag(String html, String name, int from) {
+		int i = html.indexOf("</", from);
+		while (i >= 0) {
+			int j = i + 2;
+			if (html.regionMatches(true, j, name, 0, name.length())) {
+				j += name.length();
+				while (j < html.length() && Character.isWhitespace(html.charAt(j))) {
+					j++;
+				}
+				if (j < html.length() && html.charAt(j) == '>') {
+					return i;
+				}
+			}
+			i = html.indexOf("</", i + 2);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index just past an end tag.
+	 *
+	 * @param html
+	 *            raw html of the page
+	 * @param name
+	 *            name of the element
+	 * @param start
+	 *            index of the "&lt;/" that starts the end tag
+	 * @return index just past the '&gt;' of the end tag
+	 */
+	private static int endTagEnd(String html, String name, int start) {
+		int j = start + 2 + name.length();
+		while (html.charAt(j) != '>') {
+			j++;
+		}
+		return j + 1;
+	}
+
+	/**
+	 * Adds the link in the href attribute of an anchor tag, if it has one.
+	 *
+	 * @param base
+	 *            url of the page
+	 * @param html
+	 *            raw html of the page
+	 * @param i
+	 *            index just past the tag name
+	 * @param close
+	 *            index of the '&gt;' that ends the tag
+	 */
+	private void parseAnchor(URL base, String html, int i, int close) {
+		while (i < close) {
+			while (i < close && Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+
+			int nameStart = i;
+			while (i < close && html.charAt(i) != '=' && !Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+			int nameEnd = i;
+
+			while (i < close && Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+			if (i >= close || html.charAt(i) != '=') {
+				if (i == nameStart) {
+					i++;
+				}
+				continue;
+			}
+			i++;
+			while (i < close && Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+
+			int valueStart;
+			int valueEnd;
+			if (i < close && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+				char quote = html.charAt(i);
+				valueStart = i + 1;
+				valueEnd = html.indexOf(quote, valueStart);
+				if (valueEnd < 0 || valueEnd > close) {
+					valueEnd = close;
+				}
+				i = valueEnd + 1;
+			} else {
+				valueStart = i;
+				while (i < close && !Character.isWhitespace(html.charAt(i))) {
+					i++;
+				}
+				valueEnd = i;
+			}
+
+			if (nameEnd - nameStart == 4 && html.regionMatches(true, nameStart, "href", 0, 4)) {
+				addLink(base, html.substring(valueStart, valueEnd).trim());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Converts a link to absolute, cleans it, and adds it if it is HTTP(S).
+	 *
+	 * @param base
+	 *            url of the page
+	 * @param href
+	 *            value of the href attribute
+	 */
+	private void addLink(URL base, String href) {
+		if (href.isEmpty()) {
+			return;
+		}
+
+		try {
+			URL absolute = LinkParser.clean(new URL(base, href));
+			if (absolute.getProtocol().toLowerCase().startsWith("http")) {
+				links.add(absolute);
+			}
+		} catch (MalformedURLException e) {
+			System.out.println("Bad URL!");
+		}
+	}
+
+	/**
+	 * Parses a named or numeric character reference, such as "&amp;amp;" or
+	 * "&amp;#160;".
+	 *
+	 * @param html
+	 *            raw html of the page
+	 * @param start
+	 *            index of the '&amp;'
+	 * @return index just past the ';', or start if it is not an entity
+	 */
+	private static int parseEntity(String html, int start) {
+		int end = Math.min(html.length(), start + MAX_ENTITY + 2);
+		for (int i = start + 1; i < end; i++) {
+			char c = html.charAt(i);
+			if (c == ';') {
+				return i > start + 1 ? i + 1 : start;
+			}
+			if (!Character.isLetterOrDigit(c) && c != '#') {
+				return start;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Checks if a character may appear in a tag name.
+	 *
+	 * @param c
+	 *            character to check
+	 * @return true if the character is a letter, digit, or dash
+	 */
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '-' || c == ':';
+	}
+}
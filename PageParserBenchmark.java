@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares {@link PageParser} with the regular expression based
+ * {@link LinkParser#listLinks(URL, String)} and
+ * {@link HTMLCleaner#stripHTML(String)} it replaced. Checks that both find the
+ * same links and words on every page, then reports the time each takes per
+ * page, as the median of several runs. Also times pages built to be slow to
+ * parse, such as many '&lt;' without any '&gt;', which should take time in
+ * proportion to their size.
+ *
+ * Usage: {@code java PageParserBenchmark [directory] [runs]}, where the
+ * directory is searched for .html and .htm files.
+ */
+public class PageParserBenchmark {
+
+	/** Default number of timed runs. */
+	public static final int DEFAULT_RUNS = 6;
+
+	/** Size in characters of each generated hostile page. */
+	private static final int HOSTILE_SIZE = 1 << 20;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args
+	 *            directory of pages and number of runs, both optional
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		Path directory = Paths.get(args.length > 0 ? args[0] : ".");
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(directory)) {
+			files = paths.filter(Files::isRegularFile).filter(path -> {
+				String name = path.toString().toLowerCase();
+				return name.endsWith(".html") || name.endsWith(".htm");
+			}).collect(Collectors.toList());
+		}
+
+		ArrayList<String> pages = new ArrayList<>();
+		ArrayList<URL> bases = new ArrayList<>();
+		long bytes = 0;
+		for (Path file : files) {
+			String html = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			pages.add(html);
+			bases.add(file.toUri().toURL());
+			bytes += html.length();
+		}
+		System.out.printf("%d pages, %d characters%n", pages.size(), bytes);
+
+		int sameWords = 0;
+		int sameLinks = 0;
+		for (int i = 0; i < pages.size(); i++) {
+			PageParser page = new PageParser(bases.get(i), pages.get(i));
+			if (Arrays.equals(WordParser.parseWords(HTMLCleaner.stripHTML(pages.get(i))),
+					WordParser.parseWords(page.text()))) {
+				sameWords++;
+			}
+			if (LinkParser.listLinks(bases.get(i), pages.get(i)).equals(page.links())) {
+				sameLinks++;
+			}
+		}
+		System.out.printf("same words on %d pages, same links on %d pages%n", sameWords, sameLinks);
+
+		if (!pages.isEmpty()) {
+			double[] regex = new double[runs];
+			double[] scan = new double[runs];
+			for (int r = 0; r < runs; r++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < pages.size(); i++) {
+					LinkParser.listLinks(bases.get(i), pages.get(i));
+					HTMLCleaner.stripHTML(pages.get(i));
+				}
+				long middle = System.nanoTime();
+				for (int i = 0; i < pages.size(); i++) {
+					new PageParser(bases.get(i), pages.get(i));
+				}
+				long end = System.nanoTime();
+
+				regex[r] = (middle - start) / 1e3 / pages.size();
+				scan[r] = (end - middle) / 1e3 / pages.size();
+			}
+			System.out.printf("regular expressions %.1f us per page, one scan %.1f us per page%n", median(regex),
+					median(scan));
+		}
+
+		URL base = new URL("http://localhost/");
+		String[][] hostile = { { "'<' without '>'", "<" }, { "unclosed comments", "<!--" },
+				{ "unclosed scripts", "<script>" }, { "unclosed anchors", "<a href=" } };
+		for (String[] kind : hostile) {
+			String html = repeat(kind[1], HOSTILE_SIZE / kind[1].length());
+			double[] times = new double[runs];
+			for (int r = 0; r < runs; r++) {
+				long start = System.nanoTime();
+				new PageParser(base, html);
+				times[r] = (System.nanoTime() - start) / 1e6;
+			}
+			System.out.printf("%s: %.1f ms for %d characters%n", kind[0], median(times), html.length());
+		}
+	}
+
+	/**
+	 * Repeats text.
+	 *
+	 * @param text
+	 *            text to repeat
+	 * @param times
+	 *            number of copies
+	 * @return copies of the text joined together
+	 */
+	private static String repeat(String text, int times) {
+		StringBuilder builder = new StringBuilder(text.length() * times);
+		for (int i = 0; i < times; i++) {
+			builder.append(text);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the median of some times.
+	 *
+	 * @param times
+	 *            times to sort in place
+	 * @return median time
+	 */
+	private static double median(double[] times) {
+		Arrays.sort(times);
+		return times[times.length / 2];
+	}
+}
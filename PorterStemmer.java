@@ -0,0 +1,459 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reduces words to their stems using the Porter stemming algorithm, so that
+ * words like "index", "indexes", "indexed", and "indexing" all map to the same
+ * term. Stems are memoized, since a corpus repeats the same few hundred
+ * thousand words many times.
+ *
+ * @see <a href="https://tartarus.org/martin/PorterStemmer/def.txt">An algorithm
+ *      for suffix stripping</a>
+ */
+public class PorterStemmer implements TermFilter {
+
+	/** Default maximum number of memoized stems. */
+	public static final int DEFAULT_CACHE_SIZE = 1 << 20;
+
+	private final ConcurrentHashMap<String, String> cache;
+	private final int maxCache;
+
+	/**
+	 * Initializes a stemmer with the default cache size.
+	 *
+	 * @see #DEFAULT_CACHE_SIZE
+	 */
+	public PorterStemmer() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Initializes a stemmer that memoizes up to the specified number of stems.
+	 *
+	 * @param maxCache
+	 *            maximum number of memoized stems
+	 */
+	public PorterStemmer(int maxCache) {
+		this.cache = new ConcurrentHashMap<>();
+		this.maxCache = maxCache;
+	}
+
+	@Override
+	public String filter(String word) {
+		String stem = cache.get(word);
+		if (stem == null) {
+			// not interned here, since queries are stemmed too
+			stem = stem(word);
+			if (cache.size() < maxCache) {
+				cache.put(word, stem);
+			}
+		}
+		return stem;
+	}
+
+	/**
+	 * Returns the stem of a lowercase word. Words of two letters or fewer and
+	 * words with non-ASCII letters are returned unchanged.
+	 *
+	 * @param word
+	 *            lowercase word to stem
+	 * @return stem of the word
+	 */
+	public static String stem(String word) {
+		if (word.length() <= 2) {
+			return word;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if (c < 'a' || c > 'z') {
+				return word;
+			}
+		}
+
+		Stemmer stemmer = new Stemmer(word);
+		stemmer.step1();
+		stemmer.step2();
+		stemmer.step3();
+		stemmer.step4();
+		stemmer.step5();
+		return stemmer.toString();
+	}
+
+	/**
+	 * Holds the state of a single word while its suffixes are stripped. The
+	 * current stem is b[0..k], and j marks the end of the stem being tested by
+	 * {@link #ends(String)}.
+	 */
+	private static class Stemmer {
+		private final char[] b;
+		private int k;
+		private int j;
+
+		private Stemmer(String word) {
+			b = word.toCharArray();
+			k = b.length - 1;
+			j = 0;
+		}
+
+		/** True if b[i] is a consonant. */
+		private boolean cons(int i) {
+			switch (b[i]) {
+			case 'a':
+			case 'e':
+			case 'i':
+			case 'o':
+			case 'u':
+				return false;
+			case 'y':
+				return i == 0 ? true : !cons(i - 1);
+			default:
+				return true;
+			}
+		}
+
+		/** Measures the number of consonant sequences between 0 and j. */
+		private int m() {
+			int n = 0;
+			int i = 0;
+			while (true) {
+				if (i > j) {
+					return n;
+				}
+				if (!cons(i)) {
+					break;
+				}
+				i++;
+			}
+			i++;
+			while (true) {
+				while (true) {
+					if (i > j) {
+						return n;
+					}
+					if (cons(i)) {
+						break;
+					}
+					i++;
+				}
+				i++;
+				n++;
+				while (true) {
+					if (i > j) {
+						return n;
+					}
+					if (!cons(i)) {
+						break;
+					}
+					i++;
+				}
+				i++;
+			}
+		}
+
+		/** True if 0..j contains a vowel. */
+		private boolean vowelInStem() {
+			for (int i = 0; i <= j; i++) {
+				if (!cons(i)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/** True if j, j-1 is a double consonant. */
+		private boolean doublec(int j) {
+			return j >= 1 && b[j] == b[j - 1] && cons(j);
+		}
+
+		/**
+		 * True if i-2, i-1, i has the form consonant-vowel-consonant and the
+		 * second consonant is not w, x, or y.
+		 */
+		private boolean cvc(int i) {
+			if (i < 2 || !cons(i) || cons(i - 1) || !cons(i - 2)) {
+				return false;
+			}
+			char c = b[i];
+			return c != 'w' && c != 'x' && c != 'y';
+		}
+
+		/** True if 0..k ends with the suffix, and sets j before the suffix. */
+		private boolean ends(String s) {
+			int length = s.length();
+			int o = k - length + 1;
+			if (o < 0) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (b[o + i] != s.charAt(i)) {
+					return false;
+				}
+			}
+			j = k - length;
+			return true;
+		}
+
+		/** Replaces j+1..k with the string, and readjusts k. */
+		private void setto(String s) {
+			int length = s.length();
+			int o = j + 1;
+			for (int i = 0; i < length; i++) {
+				b[o + i] = s.charAt(i);
+			}
+			k = j + length;
+		}
+
+		/** Replaces the suffix if the remaining stem has a measure above 0. */
+		private void r(String s) {
+			if (m() > 0) {
+				setto(s);
+			}
+		}
+
+		/** Removes plurals and -ed or -ing. */
+		private void step1() {
+			if (b[k] == 's') {
+				if (ends("sses")) {
+					k -= 2;
+				} else if (ends("ies")) {
+					setto("i");
+				} else if (b[k - 1] != 's') {
+					k--;
+				}
+			}
+			if (ends("eed")) {
+				if (m() > 0) {
+					k--;
+				}
+			} else if ((ends("ed") || ends("ing")) && vowelInStem()) {
+				k = j;
+				if (ends("at")) {
+					setto("ate");
+				} else if (ends("bl")) {
+					setto("ble");
+				} else if (ends("iz")) {
+					setto("ize");
+				} else if (doublec(k)) {
+					k--;
+					char c = b[k];
+					if (c == 'l' || c == 's' || c == 'z') {
+						k++;
+					}
+				} else if (m() == 1 && cvc(k)) {
+					setto("e");
+				}
+			}
+
+			// turns terminal y to i when there is another vowel in the stem
+			if (ends("y") && vowelInStem()) {
+				b[k] = 'i';
+			}
+		}
+
+		/** Maps double suffixes to single ones, such as -ization to -ize. */
+		private void step2() {
+			if (k == 0) {
+				return;
+			}
+			switch (b[k - 1]) {
+			case 'a':
+				if (ends("ational")) {
+					r("ate");
+				} else if (ends("tional")) {
+					r("tion");
+				}
+				break;
+			case 'c':
+				if (ends("enci")) {
+					r("ence");
+				} else if (ends("anci")) {
+					r("ance");
+				}
+				break;
+			case 'e':
+				if (ends("izer")) {
+					r("ize");
+				}
+				break;
+			case 'l':
+				if (ends("bli")) {
+					r("ble");
+				} else if (ends("alli")) {
+					r("al");
+				} else if (ends("entli")) {
+					r("ent");
+				} else if (ends("eli")) {
+					r("e");
+				} else if (ends("ousli")) {
+					r("ous");
+				}
+				break;
+			case 'o':
+				if (ends("ization")) {
+					r("ize");
+				} else if (ends("ation")) {
+					r("ate");
+				} else if (ends("ator")) {
+					r("ate");
+				}
+				break;
+			case 's':
+				if (ends("alism")) {
+					r("al");
+				} else if (ends("iveness")) {
+					r("ive");
+				} else if (ends("fulness")) {
+					r("ful");
+				} else if (ends("ousness")) {
+					r("ous");
+				}
+				break;
+			case 't':
+				if (ends("aliti")) {
+					r("al");
+				} else if (ends("iviti")) {
+					r("ive");
+				} else if (ends("biliti")) {
+					r("ble");
+				}
+				break;
+			case 'g':
+				if (ends("logi")) {
+					r("log");
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		/** Handles -ic-, -full, -ness, and similar suffixes. */
+		private void step3() {
+			switch (b[k]) {
+			case 'e':
+				if (ends("icate")) {
+					r("ic");
+				} else if (ends("ative")) {
+					r("");
+				} else if (ends("alize")) {
+					r("al");
+				}
+				break;
+			case 'i':
+				if (ends("iciti")) {
+					r("ic");
+				}
+				break;
+			case 'l':
+				if (ends("ical")) {
+					r("ic");
+				} else if (ends("ful")) {
+					r("");
+				}
+				break;
+			case 's':
+				if (ends("ness")) {
+					r("");
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		/** Removes -ant, -ence, and similar suffixes when the measure is 2. */
+		private void step4() {
+			if (k == 0) {
+				return;
+			}
+			switch (b[k - 1]) {
+			case 'a':
+				if (ends("al")) {
+					break;
+				}
+				return;
+			case 'c':
+				if (ends("ance") || ends("ence")) {
+					break;
+				}
+				return;
+			case 'e':
+				if (ends("er")) {
+					break;
+				}
+				return;
+			case 'i':
+				if (ends("ic")) {
+					break;
+				}
+				return;
+			case 'l':
+				if (ends("able") || ends("ible")) {
+					break;
+				}
+				return;
+			case 'n':
+				if (ends("ant") || ends("ement") || ends("ment") || ends("ent")) {
+					break;
+				}
+				return;
+			case 'o':
+				if (ends("ion") && j >= 0 && (b[j] == 's' || b[j] == 't')) {
+					break;
+				}
+				if (ends("ou")) {
+					break;
+				}
+				return;
+			case 's':
+				if (ends("ism")) {
+					break;
+				}
+				return;
+			case 't':
+				if (ends("ate") || ends("iti")) {
+					break;
+				}
+				return;
+			case 'u':
+				if (ends("ous")) {
+					break;
+				}
+				return;
+			case 'v':
+				if (ends("ive")) {
+					break;
+				}
+				return;
+			case 'z':
+				if (ends("ize")) {
+					break;
+				}
+				return;
+			default:
+				return;
+			}
+			if (m() > 1) {
+				k = j;
+			}
+		}
+
+		/** Removes a final -e and changes -ll to -l when the measure is high. */
+		private void step5() {
+			j = k;
+			if (b[k] == 'e') {
+				int a = m();
+				if (a > 1 || a == 1 && !cvc(k - 1)) {
+					k--;
+				}
+			}
+			if (b[k] == 'l' && doublec(k) && m() > 1) {
+				k--;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return new String(b, 0, k + 1);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+import java.util.TreeSet;
+
+/**
+ * Posting that keeps every position a word was found at.
+ */
+public class PositionPosting implements Posting {
+
+	private final TreeSet<Integer> positions;
+
+	/**
+	 * Initializes an empty posting.
+	 */
+	public PositionPosting() {
+		positions = new TreeSet<>();
+	}
+
+	@Override
+	public void add(int position) {
+		positions.add(position);
+	}
+
+	/**
+	 * Adds all positions stored by the other posting to this posting.
+	 *
+	 * @param other
+	 *            posting for the same word and file
+	 * @throws IllegalArgumentException
+	 *             if the other posting does not store positions
+	 */
+	@Override
+	public void addAll(Posting other) {
+		if (other.positions() == null) {
+			throw new IllegalArgumentException("Cannot merge a frequency-only posting into a positional index.");
+		}
+		positions.addAll(other.positions());
+	}
+
+	@Override
+	public int frequency() {
+		return positions.size();
+	}
+
+	@Override
+	public int first() {
+		return positions.first();
+	}
+
+	@Override
+	public TreeSet<Integer> positions() {
+		return positions;
+	}
+}
@@ -0,0 +1,45 @@
+import java.util.TreeSet;
+
+/**
+ * Stores where a single word was found in a single file.
+ */
+public interface Posting {
+
+	/**
+	 * Records another occurrence of the word at the specified position.
+	 *
+	 * @param position
+	 *            position of the word in the file
+	 */
+	public void add(int position);
+
+	/**
+	 * Adds all occurrences recorded by the other posting to this posting.
+	 *
+	 * @param other
+	 *            posting for the same word and file
+	 */
+	public void addAll(Posting other);
+
+	/**
+	 * Returns the number of times the word was found in the file.
+	 *
+	 * @return frequency of the word
+	 */
+	public int frequency();
+
+	/**
+	 * Returns the first position the word was found at in the file.
+	 *
+	 * @return initial position
+	 */
+	public int first();
+
+	/**
+	 * Returns every position the word was found at in the file, if this posting
+	 * keeps them.
+	 *
+	 * @return sorted positions, or null if positions are not stored
+	 */
+	public TreeSet<Integer> positions();
+}
@@ -37,7 +37,7 @@ public class QueryProcessor implements QueryProcessorInterface {
 		try (BufferedReader reader = Files.newBufferedReader(queryFile, Charset.forName("UTF-8"))) {
 			String line = null;
 			while ((line = reader.readLine()) != null) {
-				String[] cleanedWords = WordParser.parseWords(line);
+				String[] cleanedWords = WordParser.parseQuery(line);
 				Arrays.sort(cleanedWords);
 				String cleanedLine = String.join(" ", cleanedWords);
 				if (!cleanedLine.equals("")) {
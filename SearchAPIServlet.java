@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers searches with one page of results as JSON, for scripts and load
+ * tests. Takes the query in the q parameter, "partial" (the default) or
+ * "exact" in the mode parameter, and the number of results and the index of
+ * the first one in the k and offset parameters. Keeps nothing between
+ * requests, so any number of requests can be answered at once.
+ *
+ * Searches run asynchronously on a {@link SearchService}, which frees the
+ * request thread while the search runs. A search that reaches its deadline
+ * answers with the results found so far and "complete" set to false. When
+ * the service is overloaded, the request is answered with 503 Service
+ * Unavailable right away.
+ */
+@SuppressWarnings("serial")
+public class SearchAPIServlet extends HttpServlet {
+
+	/** Number of results on a page when not specified. */
+	public static final int DEFAULT_K = 10;
+
+	/** Most results on one page. */
+	public static final int MAX_K = 100;
+
+	private final SearchService search;
+
+	/**
+	 * Initializes the servlet.
+	 *
+	 * @param search
+	 *            service to run searches on
+	 */
+	public SearchAPIServlet(SearchService search) {
+		super();
+		this.search = search;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		String query = request.getParameter("q");
+		String mode = request.getParameter("mode");
+		int k = parameter(request, "k", DEFAULT_K);
+		int offset = parameter(request, "offset", 0);
+
+		if (query == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing q parameter.");
+			return;
+		}
+		if (mode != null && !mode.equals("exact") && !mode.equals("partial")) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Mode must be exact or partial.");
+			return;
+		}
+		if (k < 1 || k > MAX_K || offset < 0) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"k must be from 1 to " + MAX_K + " and offset at least 0.");
+			return;
+		}
+
+		CompletableFuture<SearchService.Results> future;
+		try {
+			future = search.search(query, "exact".equals(mode));
+		} catch (RejectedExecutionException e) {
+			response.setHeader("Retry-After", "1");
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many searches, try again shortly.");
+			return;
+		}
+
+		AsyncContext async = request.startAsync();
+		future.whenComplete((results, error) -> {
+			HttpServletResponse asyncResponse = (HttpServletResponse) async.getResponse();
+			try {
+				if (error != null) {
+					asyncResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Search failed.");
+				} else {
+					asyncResponse.setContentType("application/json");
+					asyncResponse.setCharacterEncoding("UTF-8");
+					asyncResponse.setStatus(HttpServletResponse.SC_OK);
+					JSONWriter.asSearchResults(asyncResponse.getWriter(), results.query(), results.exact(),
+							results.results(), results.complete(), offset, k);
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to send search results.");
+			} finally {
+				async.complete();
+			}
+		});
+	}
+
+	/**
+	 * Returns the value of a parameter as an integer.
+	 *
+	 * @param request
+	 *            request to get the parameter from
+	 * @param name
+	 *            name of the parameter
+	 * @param defaultValue
+	 *            value to return if the parameter is missing
+	 * @return value of the parameter, the default if it is missing, or -1 if
+	 *         it is not an integer
+	 */
+	private static int parameter(HttpServletRequest request, String name, int defaultValue) {
+		String value = request.getParameter(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
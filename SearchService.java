@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs searches from the web servlets on a dedicated work queue, so that a
+ * burst of slow searches cannot tie up the threads of the web server. Every
+ * search has a deadline, after which it stops and returns the results found
+ * so far. Searches are turned away while too many are waiting or while they
+ * have recently been waiting too long, so the server sheds load quickly
+ * instead of letting every search slow down.
+ */
+public class SearchService {
+
+	/** Default time a search may take in milliseconds. */
+	public static final long DEFAULT_DEADLINE = 500;
+
+	/** Default number of searches that may wait to be run. */
+	public static final int DEFAULT_MAX_DEPTH = 256;
+
+	/** Default average time in milliseconds searches may wait to be run. */
+	public static final long DEFAULT_MAX_WAIT = 250;
+
+	/** Weight of the newest wait in the moving average. */
+	private static final double SMOOTHING = 0.2;
+
+	private final InvertedIndex index;
+	private final WorkQueue queue;
+	private final long deadline;
+	private final int maxDepth;
+	private final long maxWait;
+
+	/** Moving average of the time searches waited to be run, in milliseconds. */
+	private volatile double averageWait;
+
+	private final AtomicLong accepted;
+	private final AtomicLong rejected;
+	private final AtomicLong truncated;
+
+	/**
+	 * Initializes a search service with the default deadline and limits.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param queue
+	 *            queue to run searches on
+	 */
+	public SearchService(InvertedIndex index, WorkQueue queue) {
+		this(index, queue, DEFAULT_DEADLINE, DEFAULT_MAX_DEPTH, DEFAULT_MAX_WAIT);
+	}
+
+	/**
+	 * Initializes a search service.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param queue
+	 *            queue to run searches on
+	 * @param deadline
+	 *            time a search may take in milliseconds
+	 * @param maxDepth
+	 *            number of searches that may wait to be run
+	 * @param maxWait
+	 *            average time in milliseconds searches may wait to be run
+	 */
+	public SearchService(InvertedIndex index, WorkQueue queue, long deadline, int maxDepth, long maxWait) {
+		this.index = index;
+		this.queue = queue;
+		this.deadline = deadline;
+		this.maxDepth = maxDepth;
+		this.maxWait = maxWait;
+		this.averageWait = 0;
+		this.accepted = new AtomicLong(0);
+		this.rejected = new AtomicLong(0);
+		this.truncated = new AtomicLong(0);
+	}
+
+	/**
+	 * Starts a search. The deadline of the search starts now, so time spent
+	 * waiting to be run counts against it.
+	 *
+	 * @param query
+	 *            query as typed by the user
+	 * @param exact
+	 *            true for an exact search, false for a partial search
+	 * @return future completed with the results
+	 * @throws RejectedExecutionException
+	 *             if the service is overloaded and the search was not started
+	 */
+	public CompletableFuture<Results> search(String query, boolean exact) {
+		if (!admit()) {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException("Too many searches waiting.");
+		}
+
+		long submitted = System.nanoTime();
+		Deadline limit = new Deadline(deadline);
+		try {
+			CompletableFuture<Results> future = queue.submit(() -> {
+				long started = System.nanoTime();
+				double waited = (started - submitted) / 1e6;
+				averageWait = averageWait + SMOOTHING * (waited - averageWait);
+
+				String[] words = WordParser.parseQuery(query);
+				Arrays.sort(words);
+				ArrayList<Result> results = exact ? index.exactSearch(words, limit)
+						: index.partialSearch(words, limit);
+				if (limit.reached()) {
+					truncated.incrementAndGet();
+				}
+				return new Results(String.join(" ", words), exact, results, !limit.reached(),
+						(System.nanoTime() - submitted) / 1000000);
+			}, WorkQueue.Priority.INTERACTIVE);
+			accepted.incrementAndGet();
+			return future;
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks whether there is room for another search. A search is turned
+	 * away if too many are waiting, or if searches have recently waited too
+	 * long and any are still waiting; once the queue empties, searches are let
+	 * in again so the average can recover.
+	 *
+	 * @return true if a search may be started
+	 */
+	private boolean admit() {
+		long depth = queue.waiting(WorkQueue.Priority.INTERACTIVE);
+		if (depth >= maxDepth) {
+			return false;
+		}
+		return averageWait <= maxWait || depth == 0;
+	}
+
+	/**
+	 * Returns the time each search may take.
+	 *
+	 * @return deadline in milliseconds
+	 */
+	public long deadline() {
+		return deadline;
+	}
+
+	/**
+	 * Returns a one-line report of the searches accepted, turned away, and cut
+	 * short by their deadline.
+	 *
+	 * @return report
+	 */
+	@Override
+	public String toString() {
+		return String.format("searches %d accepted, %d rejected, %d cut short, average wait %.1f ms", accepted.get(),
+				rejected.get(), truncated.get(), averageWait);
+	}
+
+	/**
+	 * The results of one search.
+	 */
+	public static class Results {
+		private final String query;
+		private final boolean exact;
+		private final ArrayList<Result> results;
+		private final boolean complete;
+		private final long millis;
+
+		private Results(String query, boolean exact, ArrayList<Result> results, boolean complete, long millis) {
+			this.query = query;
+			this.exact = exact;
+			this.results = results;
+			this.complete = complete;
+			this.millis = millis;
+		}
+
+		/**
+		 * Returns the cleaned and sorted query that was searched for.
+		 *
+		 * @return query
+		 */
+		public String query() {
+			return query;
+		}
+
+		/**
+		 * Returns whether the search was exact.
+		 *
+		 * @return true if exact, false if partial
+		 */
+		public boolean exact() {
+			return exact;
+		}
+
+		/**
+		 * Returns the results found, sorted.
+		 *
+		 * @return results
+		 */
+		public ArrayList<Result> results() {
+			return results;
+		}
+
+		/**
+		 * Returns whether the search finished before its deadline.
+		 *
+		 * @return true if every result was found, false if these are the
+		 *         results found before the deadline
+		 */
+		public boolean complete() {
+			return complete;
+		}
+
+		/**
+		 * Returns the time from starting the search to finishing it, including
+		 * the time it waited to be run.
+		 *
+		 * @return time in milliseconds
+		 */
+		public long millis() {
+			return millis;
+		}
+	}
+}
@@ -1,30 +1,96 @@
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Serves the search page. The form submits the query back to the page as GET
+ * parameters, so every search is a plain link and nothing is kept between
+ * requests; concurrent users never see each other's queries, and a search is
+ * only run when a query was submitted.
+ *
+ * Searches run asynchronously on a {@link SearchService}, so a burst of slow
+ * searches does not tie up the threads of the web server. A search that
+ * reaches its deadline shows the results found so far, and when the service
+ * is overloaded the page is answered with 503 Service Unavailable.
+ */
 @SuppressWarnings("serial")
 public class SearchServlet extends HttpServlet {
 	private static final String TITLE = "Search Engine";
 
-	InvertedIndex index;
-	private String results;
+	private final SearchService search;
 
-	public SearchServlet(InvertedIndex index) {
+	public SearchServlet(SearchService search) {
 		super();
-		this.index = index;
-		results = "";
+		this.search = search;
 	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
+		String query = request.getParameter("query");
+		boolean exact = "exact".equals(request.getParameter("mode"));
+		String path = request.getServletPath();
+
+		if (query == null || query.trim().isEmpty()) {
+			printPage(response, path, query, exact, null);
+			return;
+		}
+
+		CompletableFuture<SearchService.Results> future;
+		try {
+			future = search.search(query, exact);
+		} catch (RejectedExecutionException e) {
+			response.setHeader("Retry-After", "1");
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many searches, try again shortly.");
+			return;
+		}
+
+		AsyncContext async = request.startAsync();
+		future.whenComplete((results, error) -> {
+			HttpServletResponse asyncResponse = (HttpServletResponse) async.getResponse();
+			try {
+				if (error != null) {
+					asyncResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Search failed.");
+				} else {
+					printPage(asyncResponse, path, query, exact, results);
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to send search results.");
+			} finally {
+				async.complete();
+			}
+		});
+	}
+
+	/**
+	 * Writes the search page, with the results of a search if there are any.
+	 *
+	 * @param response
+	 *            response to write to
+	 * @param path
+	 *            path of the servlet, for the form to submit to
+	 * @param query
+	 *            query as typed by the user, or null
+	 * @param exact
+	 *            true if the search was exact
+	 * @param results
+	 *            results of the search, or null if none was run
+	 * @throws IOException
+	 */
+	private static void printPage(HttpServletResponse response, String path, String query, boolean exact,
+			SearchService.Results results) throws IOException {
+
 		response.setContentType("text/html");
+		response.setCharacterEncoding("UTF-8");
 		response.setStatus(HttpServletResponse.SC_OK);
 
 		PrintWriter out = response.getWriter();
@@ -33,60 +99,84 @@ public class SearchServlet extends HttpServlet {
 		out.printf("<body>%n");
 
 		out.printf("<h1>Search Engine</h1>%n%n");
-		printForm(request, response);
-
-		long totalTime = 0;
+		printForm(path, out, query, exact);
 
-		ArrayList<Result> searchResults = null;
 		if (results != null) {
-			long startTime = System.currentTimeMillis();
-			String[] parsedQuery = WordParser.parseWords(results);
-			searchResults = index.partialSearch(parsedQuery);
-			long endTime = System.currentTimeMillis();
-			totalTime = endTime - startTime;
-			for (Result r : searchResults) {
-				out.printf("<p>");
-				out.printf("<a href=\"%s\"> %s </a>", r.path(), r.path());
-				out.printf("</p>");
+			for (Result r : results.results()) {
+				String link = escape(r.path());
+				out.printf("<p><a href=\"%s\">%s</a></p>%n", link, link);
 			}
-		}
 
-		out.printf("<p>Total number of results: %s</p>", searchResults.size());
-		out.printf("<p>This search took %s milliseconds</p>", totalTime);
+			out.printf("<p>Total number of results: %s</p>%n", results.results().size());
+			if (!results.complete()) {
+				out.printf("<p>The search ran out of time, so these are only the results found so far.</p>%n");
+			}
+			out.printf("<p>This search took %s milliseconds</p>%n", results.millis());
+		}
 
 		out.printf("%n</body>%n");
 		out.printf("</html>%n");
-
-		response.setStatus(HttpServletResponse.SC_OK);
 	}
 
+	/**
+	 * Redirects a query posted by an older copy of the form to the page for
+	 * that query.
+	 */
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		response.setContentType("text/html");
-		response.setStatus(HttpServletResponse.SC_OK);
-
 		String query = request.getParameter("query");
 		query = query == null ? "" : query;
-		results = query;
-
-		response.setStatus(HttpServletResponse.SC_OK);
-		response.sendRedirect(request.getServletPath());
+		response.sendRedirect(request.getServletPath() + "?query=" + URLEncoder.encode(query, "UTF-8"));
 	}
 
-	private static void printForm(HttpServletRequest request, HttpServletResponse response) throws IOException {
-
-		PrintWriter out = response.getWriter();
-		out.printf("<form method=\"post\" action=\"%s\">%n", request.getServletPath());
-		out.printf("<table cellspacing=\"0\" cellpadding=\"2\"%n");
+	private static void printForm(String path, PrintWriter out, String query, boolean exact) {
+		out.printf("<form method=\"get\" action=\"%s\">%n", path);
 		out.printf("<div>");
 		out.printf("<center><label for=\"search\">Search:</label>");
-		out.printf("<input type=\"text\" name=\"query\" maxlength=\"100\" size=\"60\">%n");
+		out.printf("<input type=\"text\" id=\"search\" name=\"query\" maxlength=\"100\" size=\"60\" value=\"%s\">%n",
+				query == null ? "" : escape(query));
+		out.printf("<label><input type=\"checkbox\" name=\"mode\" value=\"exact\"%s> Exact</label>%n",
+				exact ? " checked" : "");
 		out.printf("</div>");
 		out.printf("<p><div class=\"button\">");
 		out.printf("<button type=\"submit\">Submit</button>");
 		out.printf("</center></div></p>");
 		out.printf("</form>\n%n");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Escapes text for use in HTML content or a quoted attribute.
+	 *
+	 * @param text
+	 *            text to escape
+	 * @return escaped text
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				escaped.append("&lt;");
+				break;
+			case '>':
+				escaped.append("&gt;");
+				break;
+			case '&':
+				escaped.append("&amp;");
+				break;
+			case '"':
+				escaped.append("&quot;");
+				break;
+			case '\'':
+				escaped.append("&#39;");
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
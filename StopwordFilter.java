@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Drops common words whose posting lists would cover nearly every document.
+ */
+public class StopwordFilter implements TermFilter {
+
+	/** Common English words that are dropped by default. */
+	public static final String[] DEFAULT_STOPWORDS = { "a", "an", "and", "are", "as", "at", "be", "but", "by", "for",
+			"if", "in", "into", "is", "it", "no", "not", "of", "on", "or", "such", "that", "the", "their", "then",
+			"there", "these", "they", "this", "to", "was", "will", "with" };
+
+	private final Set<String> stopwords;
+
+	/**
+	 * Initializes a filter that drops the default stopwords.
+	 *
+	 * @see #DEFAULT_STOPWORDS
+	 */
+	public StopwordFilter() {
+		this(Arrays.asList(DEFAULT_STOPWORDS));
+	}
+
+	/**
+	 * Initializes a filter that drops the provided stopwords.
+	 *
+	 * @param stopwords
+	 *            words to drop
+	 */
+	public StopwordFilter(Collection<String> stopwords) {
+		this.stopwords = new HashSet<>();
+		for (String word : stopwords) {
+			for (String cleaned : WordParser.split(WordParser.clean(word))) {
+				this.stopwords.add(cleaned);
+			}
+		}
+	}
+
+	/**
+	 * Initializes a filter that drops the stopwords listed in a file, one or
+	 * more per line.
+	 *
+	 * @param file
+	 *            path to the stopword file
+	 * @throws IOException
+	 */
+	public StopwordFilter(Path file) throws IOException {
+		this(Files.readAllLines(file, Charset.forName("UTF-8")));
+	}
+
+	/**
+	 * Returns the number of stopwords dropped by this filter.
+	 *
+	 * @return number of stopwords
+	 */
+	public int size() {
+		return stopwords.size();
+	}
+
+	@Override
+	public String filter(String word) {
+		return stopwords.contains(word) ? null : word;
+	}
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Suggests completions of a partly typed query as JSON, for type-ahead search.
+ * Takes the text typed so far in the q parameter and the number of
+ * suggestions in the k parameter, completes the last word using a
+ * {@link CompletionIndex}, and returns each completion with the earlier words
+ * in front of it.
+ *
+ * Suggestions are answered right away from the current completion index, and
+ * never wait for the inverted index. When the inverted index has changed since
+ * the completion index was built, a new one is built in the background on the
+ * given executor, at most one at a time and at most once every
+ * {@link #REFRESH_INTERVAL} milliseconds, and replaces the old one when done.
+ */
+@SuppressWarnings("serial")
+public class SuggestServlet extends HttpServlet {
+
+	/** Least time in milliseconds between rebuilding the completion index. */
+	public static final long REFRESH_INTERVAL = 5000;
+
+	private final InvertedIndex index;
+	private final Executor executor;
+	private final AtomicBoolean rebuilding;
+
+	private volatile CompletionIndex completions;
+	private volatile long rebuilt;
+
+	/**
+	 * Initializes the servlet, building the first completion index right away.
+	 *
+	 * @param index
+	 *            index to take the words from
+	 * @param executor
+	 *            executor to rebuild the completion index on
+	 */
+	public SuggestServlet(InvertedIndex index, Executor executor) {
+		super();
+		this.index = index;
+		this.executor = executor;
+		this.rebuilding = new AtomicBoolean(false);
+		this.completions = new CompletionIndex(index);
+		this.rebuilt = System.currentTimeMillis();
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		String query = request.getParameter("q");
+		CompletionIndex current = completions;
+		int k = parameter(request, "k", current.size());
+
+		if (query == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing q parameter.");
+			return;
+		}
+		if (k < 1 || k > current.size()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "k must be from 1 to " + current.size() + ".");
+			return;
+		}
+
+		refresh(current);
+
+		// split without interning, since typed prefixes are mostly not words
+		String[] words = WordParser.SPLIT_REGEX.split(WordParser.clean(query));
+		String last = words[words.length - 1];
+		String before = String.join(" ", Arrays.copyOf(words, words.length - 1));
+
+		ArrayList<String> suggestions = new ArrayList<>();
+		if (!last.isEmpty()) {
+			for (String word : current.suggest(last, k)) {
+				suggestions.add(before.isEmpty() ? word : before + " " + word);
+			}
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setStatus(HttpServletResponse.SC_OK);
+		JSONWriter.asSuggestions(response.getWriter(), String.join(" ", words), suggestions);
+	}
+
+	/**
+	 * Starts building a new completion index in the background if the inverted
+	 * index has changed since the current one was built, unless one is already
+	 * being built or the last was built too recently.
+	 *
+	 * @param current
+	 *            completion index in use
+	 */
+	private void refresh(CompletionIndex current) {
+		if (current.version() == index.version()
+				|| System.currentTimeMillis() - rebuilt < REFRESH_INTERVAL
+				|| !rebuilding.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			executor.execute(() -> {
+				try {
+					completions = new CompletionIndex(index, current.size());
+				} finally {
+					rebuilt = System.currentTimeMillis();
+					rebuilding.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rebuilding.set(false);
+		}
+	}
+
+	/**
+	 * Returns the value of a parameter as an integer.
+	 *
+	 * @param request
+	 *            request to get the parameter from
+	 * @param name
+	 *            name of the parameter
+	 * @param defaultValue
+	 *            value to return if the parameter is missing
+	 * @return value of the parameter, the default if it is missing, or -1 if
+	 *         it is not an integer
+	 */
+	private static int parameter(HttpServletRequest request, String name, int defaultValue) {
+		String value = request.getParameter(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A set of related work requests run on a shared {@link WorkQueue}, such as
+ * the queries of one query file or the files of one index build. Waiting on a
+ * group only waits for the work added to that group, so several groups can
+ * share one pool of worker threads without waiting on each other.
+ *
+ * Work in a group may add more work to the same group, and {@link #finish()}
+ * waits for that work too. A group must not be waited on from one of the
+ * worker threads of its queue, since that worker could be needed to run the
+ * work being waited on.
+ */
+public class TaskGroup implements Executor {
+
+	private final WorkQueue queue;
+	private final WorkQueue.Priority priority;
+
+	/** Number of work requests added but not yet finished. */
+	private int pending;
+
+	/**
+	 * Starts a group whose work is {@link WorkQueue.Priority#BATCH}.
+	 *
+	 * @param queue
+	 *            queue to run the work on
+	 */
+	public TaskGroup(WorkQueue queue) {
+		this(queue, WorkQueue.Priority.BATCH);
+	}
+
+	/**
+	 * Starts a group.
+	 *
+	 * @param queue
+	 *            queue to run the work on
+	 * @param priority
+	 *            class of every work request in the group
+	 */
+	public TaskGroup(WorkQueue queue, WorkQueue.Priority priority) {
+		this.queue = queue;
+		this.priority = priority;
+		this.pending = 0;
+	}
+
+	/**
+	 * Adds a work request to the group.
+	 *
+	 * @param task
+	 *            work request
+	 * @throws RejectedExecutionException
+	 *             if the queue is full and its policy is to reject work
+	 */
+	@Override
+	public void execute(Runnable task) {
+		added();
+		try {
+			queue.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					finished();
+				}
+			}, priority);
+		} catch (RejectedExecutionException e) {
+			finished();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds a work request to the group, returning a future of its result.
+	 *
+	 * @param task
+	 *            work request that computes a result
+	 * @return future completed with the result of the work
+	 * @throws RejectedExecutionException
+	 *             if the queue is full and its policy is to reject work
+	 * @see WorkQueue#submit(Callable, WorkQueue.Priority)
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		execute(WorkQueue.completing(task, future));
+		return future;
+	}
+
+	/**
+	 * Waits for all work added to this group to be finished.
+	 */
+	public synchronized void finish() {
+		while (pending > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of work requests in the group not yet finished.
+	 *
+	 * @return number of pending work requests
+	 */
+	public synchronized int pending() {
+		return pending;
+	}
+
+	/**
+	 * Counts a work request before it is added to the queue.
+	 */
+	private synchronized void added() {
+		pending++;
+	}
+
+	/**
+	 * Counts a finished work request, waking any waiting threads if it was the
+	 * last.
+	 */
+	private synchronized void finished() {
+		pending--;
+		if (pending == 0) {
+			this.notifyAll();
+		}
+	}
+}
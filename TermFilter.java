@@ -0,0 +1,17 @@
+/**
+ * A single step of the analyzer chain applied by {@link WordParser} to every
+ * parsed word, both when building the index and when parsing queries.
+ */
+public interface TermFilter {
+
+	/**
+	 * Transforms a cleaned word into the term that should be indexed or
+	 * searched for.
+	 *
+	 * @param word
+	 *            cleaned, lowercase word
+	 * @return term to use instead of the word, or null if the word should be
+	 *         dropped
+	 */
+	public String filter(String word);
+}
@@ -0,0 +1,110 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps slices of text to canonical term instances, so that every occurrence of
+ * a word shares a single {@link String}. Each thread keeps a small direct-mapped
+ * cache in front of a table shared by all threads, so only the first
+ * occurrence of a term on a thread allocates a new string and repeated terms
+ * are resolved without any synchronization.
+ */
+public class TermInterner {
+
+	/** Number of slots in each per-thread cache. Must be a power of two. */
+	private static final int CACHE_SIZE = 4096;
+
+	/** Canonical term instances shared by every thread. */
+	private static final ConcurrentHashMap<String, String> terms = new ConcurrentHashMap<>();
+
+	/** Per-thread cache of recently seen terms. */
+	private static final ThreadLocal<String[]> cache = ThreadLocal.withInitial(() -> new String[CACHE_SIZE]);
+
+	/**
+	 * Returns the canonical instance of the term found between the start
+	 * (inclusive) and end (exclusive) of the text.
+	 *
+	 * @param text
+	 *            text containing the term
+	 * @param start
+	 *            index of the first character of the term
+	 * @param end
+	 *            index after the last character of the term
+	 * @return canonical term instance
+	 */
+	public static String intern(CharSequence text, int start, int end) {
+		// same hash as String.hashCode(), which every cached term has stored
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+
+		String[] local = cache.get();
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+		String cached = local[slot];
+
+		if (cached != null && cached.hashCode() == hash && matches(cached, text, start, end)) {
+			return cached;
+		}
+
+		String term = canonical(text.subSequence(start, end).toString());
+		local[slot] = term;
+		return term;
+	}
+
+	/**
+	 * Returns the canonical instance of the term.
+	 *
+	 * @param term
+	 *            term to intern
+	 * @return canonical term instance
+	 */
+	public static String intern(String term) {
+		return intern(term, 0, term.length());
+	}
+
+	/**
+	 * Returns the number of distinct terms interned so far.
+	 *
+	 * @return number of canonical terms
+	 */
+	public static int size() {
+		return terms.size();
+	}
+
+	/**
+	 * Returns the shared canonical instance of the term, adding it if this is
+	 * the first time it has been seen by any thread.
+	 *
+	 * @param term
+	 *            term to look up
+	 * @return canonical term instance
+	 */
+	private static String canonical(String term) {
+		String existing = terms.putIfAbsent(term, term);
+		return existing == null ? term : existing;
+	}
+
+	/**
+	 * Checks if the term has the same characters as the slice of text.
+	 *
+	 * @param term
+	 *            term to compare
+	 * @param text
+	 *            text containing the slice
+	 * @param start
+	 *            start of the slice
+	 * @param end
+	 *            end of the slice
+	 * @return true if the term and slice are equal
+	 */
+	private static boolean matches(String term, CharSequence text, int start, int end) {
+		if (term.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < term.length(); i++) {
+			if (term.charAt(i) != text.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,5 +1,6 @@
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.TreeMap;
 
 /**
  * Keeps a mapping of words to the files they were found in and all of the
@@ -13,7 +14,18 @@ public class ThreadSafeIndex extends InvertedIndex {
 	 * Initializes the inverted index.
 	 */
 	public ThreadSafeIndex() {
-		super();
+		this(true);
+	}
+
+	/**
+	 * Initializes the inverted index.
+	 *
+	 * @param positions
+	 *            true to store every position, false to store only the
+	 *            frequency and first position of each word in each file
+	 */
+	public ThreadSafeIndex(boolean positions) {
+		super(positions);
 		this.lock = new ReadWriteLock();
 	}
 
@@ -60,6 +72,16 @@ public class ThreadSafeIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public void removeAll(String[] words, String htmlFile) {
+		lock.lockReadWrite();
+		try {
+			super.removeAll(words, htmlFile);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
 	@Override
 	public void addAll(InvertedIndex other) {
 		lock.lockReadWrite();
@@ -124,6 +146,21 @@ public class ThreadSafeIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Returns every word in the index and the number of files it was found in.
+	 *
+	 * @return sorted mapping from word to document frequency
+	 */
+	@Override
+	public TreeMap<String, Integer> documentFrequencies() {
+		lock.lockReadOnly();
+		try {
+			return super.documentFrequencies();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
 	/**
 	 * Returns the number of keys in the TreeMap value of the key word.
 	 *
@@ -143,16 +180,16 @@ public class ThreadSafeIndex extends InvertedIndex {
 	}
 
 	/**
-	 * Returns the number of positions in the TreeSet value from the key
+	 * Returns the number of positions in the posting value from the key
 	 * fileName, from the key word.
 	 *
 	 * @param word
-	 *            key of the TreeMap<String, TreeSet<Integer>>
+	 *            key of the TreeMap<String, Posting>
 	 * 
 	 * @param fileName
-	 *            key of the TreeSet<Integer>
+	 *            key of the Posting
 	 *
-	 * @return number of positions found in the TreeSet
+	 * @return number of times the word was found in the file
 	 */
 	@Override
 	public int numPositions(String word, String fileName) {
@@ -183,18 +220,20 @@ public class ThreadSafeIndex extends InvertedIndex {
 
 	/**
 	 * Takes in parsed queries and returns a list of results that match the
-	 * queries exactly.
+	 * queries exactly, stopping early if the deadline passes.
 	 *
 	 * @param queries
 	 *            parsed queries
+	 * @param deadline
+	 *            deadline to stop at, or null for none
 	 * @return list of results
 	 */
 	@Override
-	public ArrayList<Result> exactSearch(String[] queries) {
+	public ArrayList<Result> exactSearch(String[] queries, Deadline deadline) {
 
 		lock.lockReadOnly();
 		try {
-			return super.exactSearch(queries);
+			return super.exactSearch(queries, deadline);
 		} finally {
 			lock.unlockReadOnly();
 		}
@@ -203,17 +242,19 @@ public class ThreadSafeIndex extends InvertedIndex {
 
 	/**
 	 * Takes in parsed queries and returns a list of results that start with the
-	 * queries.
+	 * queries, stopping early if the deadline passes.
 	 *
 	 * @param queries
 	 *            parsed queries
+	 * @param deadline
+	 *            deadline to stop at, or null for none
 	 * @return list of results
 	 */
 	@Override
-	public ArrayList<Result> partialSearch(String[] queries) {
+	public ArrayList<Result> partialSearch(String[] queries, Deadline deadline) {
 		lock.lockReadOnly();
 		try {
-			return super.partialSearch(queries);
+			return super.partialSearch(queries, deadline);
 		} finally {
 			lock.unlockReadOnly();
 		}
@@ -24,10 +24,11 @@ public class ThreadSafeIndexBuilder {
 
 		ArrayList<Path> paths = IndexBuilder.findHTMLFiles(dir);
 
+		TaskGroup group = new TaskGroup(queue, WorkQueue.Priority.BACKGROUND);
 		for (Path path : paths) {
-			queue.execute(new IndexTask(path, threadedIndex));
+			group.execute(new IndexTask(path, threadedIndex));
 		}
-		queue.finish();
+		group.finish();
 	}
 
 	private static class IndexTask implements Runnable {
@@ -42,7 +43,7 @@ public class ThreadSafeIndexBuilder {
 
 		@Override
 		public void run() {
-			InvertedIndex local = new InvertedIndex();
+			InvertedIndex local = new InvertedIndex(threadedIndex.storesPositions());
 			IndexBuilder.parseHTMLFile(path, local);
 			threadedIndex.addAll(local);
 		}
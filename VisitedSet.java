@@ -0,0 +1,96 @@
+/**
+ * Remembers which URL fingerprints the crawler has already seen. Every lookup
+ * checks an in-memory Bloom filter first, so URLs that were never seen are
+ * recognized without touching the exact set. Only possible positives are
+ * confirmed against the exact set, which may live in memory or on disk.
+ */
+public class VisitedSet {
+
+	/** Default false-positive rate of the Bloom filter. */
+	public static final double DEFAULT_FPP = 0.01;
+
+	/** Number of locks used to make each check-then-add atomic. */
+	private static final int STRIPES = 256;
+
+	private final BloomFilter filter;
+	private final FingerprintSet exact;
+	private final Object[] locks;
+
+	/**
+	 * Initializes a visited set with an in-memory exact set.
+	 *
+	 * @param expected
+	 *            expected number of URLs
+	 * @param fpp
+	 *            false-positive rate of the Bloom filter
+	 */
+	public VisitedSet(long expected, double fpp) {
+		this(expected, fpp, new MemoryFingerprintSet());
+	}
+
+	/**
+	 * Initializes a visited set.
+	 *
+	 * @param expected
+	 *            expected number of URLs
+	 * @param fpp
+	 *            false-positive rate of the Bloom filter
+	 * @param exact
+	 *            exact set used to confirm possible positives
+	 */
+	public VisitedSet(long expected, double fpp, FingerprintSet exact) {
+		this.filter = new BloomFilter(expected, fpp);
+		this.exact = exact;
+		this.locks = new Object[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Adds the fingerprint if it has not been seen before.
+	 *
+	 * @param fingerprint
+	 *            64-bit URL fingerprint
+	 * @return true if the fingerprint was not seen before
+	 */
+	public boolean add(long fingerprint) {
+		synchronized (locks[(int) fingerprint & (STRIPES - 1)]) {
+			if (filter.mightContain(fingerprint) && exact.contains(fingerprint)) {
+				return false;
+			}
+			filter.put(fingerprint);
+			exact.addNew(fingerprint);
+			return true;
+		}
+	}
+
+	/**
+	 * Checks if the fingerprint has been seen before.
+	 *
+	 * @param fingerprint
+	 *            64-bit URL fingerprint
+	 * @return true if the fingerprint was seen before
+	 */
+	public boolean contains(long fingerprint) {
+		return filter.mightContain(fingerprint) && exact.contains(fingerprint);
+	}
+
+	/**
+	 * Returns the number of fingerprints seen.
+	 *
+	 * @return number of fingerprints
+	 */
+	public long size() {
+		return exact.size();
+	}
+
+	/**
+	 * Returns an estimate of the heap memory used in bytes.
+	 *
+	 * @return heap bytes used by the filter and exact set
+	 */
+	public long sizeInBytes() {
+		return filter.sizeInBytes() + exact.sizeInBytes();
+	}
+}
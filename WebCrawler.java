@@ -2,100 +2,531 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Multithreaded web crawler that processes URLs and builds a thread safe index.
+ * Each page passes through a pipeline of stages: fetch, parse, tokenize, and
+ * index. Every stage has its own threads and a bounded hand-off queue, so I/O
+ * and CPU concurrency are sized separately, a slow stage blocks the stage
+ * feeding it rather than buffering without limit, and each stage reports where
+ * time is spent. Fetches are scheduled per host, shallowest pages first, so
+ * that no single web server is overloaded or takes over every fetch thread.
  */
 public class WebCrawler {
 
-	private HashSet<URL> urlSet;
-	private ThreadSafeIndex threadedIndex;
-	private WorkQueue queue;
-	private int max;
+	/** Default number of threads used to fetch pages. */
+	public static final int DEFAULT_FETCHERS = 64;
+
+	/** Default number of threads used to parse or tokenize pages. */
+	public static final int DEFAULT_WORKERS = WorkQueue.DEFAULT;
+
+	/** Default number of threads used to merge pages into the index. */
+	public static final int DEFAULT_INDEXERS = 1;
+
+	/** Default number of pages that may wait between two stages. */
+	public static final int DEFAULT_BUFFER = 32;
+
+	/** Default minimum time in milliseconds between requests to one host. */
+	public static final long DEFAULT_DELAY = 0;
+
+	/** Default maximum number of concurrent requests to one host. */
+	public static final int DEFAULT_HOST_LIMIT = 4;
+
+	private final CrawlFrontier frontier;
+	private final ThreadSafeIndex threadedIndex;
+	private final HostScheduler scheduler;
+
+	private final CrawlStage fetchStage;
+	private final CrawlStage parseStage;
+	private final CrawlStage tokenizeStage;
+	private final CrawlStage indexStage;
+
+	/** Detects duplicate pages, or null if every page is indexed. */
+	private volatile DuplicateDetector duplicates;
+
+	/** Records crawl progress so it can be resumed, or null if not logged. */
+	private volatile CrawlLog log;
+
+	/** What was recorded about URLs crawled before, keyed by URL. */
+	private final ConcurrentHashMap<String, CrawlLog.Page> previous;
+
+	/** Number of URLs that have been found but not yet fully processed. */
+	private int pending;
+
+	/**
+	 * Initializes a web crawler with the default number of threads per stage.
+	 *
+	 * @param threadedIndex
+	 *            index to add pages to
+	 */
+	public WebCrawler(ThreadSafeIndex threadedIndex) {
+		this(threadedIndex, DEFAULT_FETCHERS, DEFAULT_WORKERS, DEFAULT_WORKERS, DEFAULT_INDEXERS, DEFAULT_BUFFER,
+				new VisitedSet(1000, VisitedSet.DEFAULT_FPP));
+	}
 
 	/**
 	 * Initializes a web crawler.
+	 *
+	 * @param threadedIndex
+	 *            index to add pages to
+	 * @param fetchers
+	 *            number of threads used to fetch pages
+	 * @param parsers
+	 *            number of threads used to parse links and text from pages
+	 * @param tokenizers
+	 *            number of threads used to split text into words
+	 * @param indexers
+	 *            number of threads used to merge words into the index
+	 * @param bufferSize
+	 *            number of pages that may wait for each stage after fetching
+	 *            before the stage feeding it blocks
+	 * @param visited
+	 *            set used to remember URLs that were already found
 	 */
-	public WebCrawler(WorkQueue queue, ThreadSafeIndex threadedIndex) {
-		urlSet = new HashSet<>();
+	public WebCrawler(ThreadSafeIndex threadedIndex, int fetchers, int parsers, int tokenizers, int indexers,
+			int bufferSize, VisitedSet visited) {
+		frontier = new CrawlFrontier(visited);
 		this.threadedIndex = threadedIndex;
-		this.queue = queue;
-		max = 0;
+
+		// the scheduler already limits fetches to one per thread, and links
+		// must never block the parsers that find them
+		this.fetchStage = new CrawlStage("fetch", fetchers, 0);
+		this.parseStage = new CrawlStage("parse", parsers, bufferSize);
+		this.tokenizeStage = new CrawlStage("tokenize", tokenizers, bufferSize);
+		this.indexStage = new CrawlStage("index", indexers, bufferSize);
+		this.scheduler = new HostScheduler(fetchStage, fetchers, DEFAULT_DELAY, DEFAULT_HOST_LIMIT);
+
+		duplicates = null;
+		log = null;
+		previous = new ConcurrentHashMap<>();
+		pending = 0;
 	}
 
 	/**
-	 * Crawls a limited number of URLs, and adds a task to the work queue for
+	 * Crawls a limited number of URLs, and schedules a fetch for
 	 * every unique URL found.
 	 *
 	 * @param seed
 	 *            seed URL
-	 * 
+	 *
 	 * @param limit
 	 *            max number of URLs to crawl
-	 * 
+	 *
 	 */
 	public void crawl(URL seed, int limit) {
-		synchronized (urlSet) {
-			max += limit;
-			urlSet.add(seed);
+		frontier.addLimit(limit);
+		CrawlLog current = log;
+		if (current != null) {
+			current.limit(limit);
+		}
+		if (frontier.admit(seed)) {
+			submit(seed, 0);
+		}
+	}
+
+	/**
+	 * Continues a crawl from the state replayed from its log. URLs that were
+	 * already crawled are marked as visited, and every pending URL is fetched.
+	 * The index should already hold the words replayed from the log.
+	 *
+	 * @param state
+	 *            state replayed from the crawl log
+	 *
+	 * @see CrawlLog#replay(java.nio.file.Path, InvertedIndex)
+	 */
+	public void resume(CrawlLog.State state) {
+		frontier.addLimit(state.limit());
+		for (CrawlLog.Page page : state.pages().values()) {
+			if (frontier.admit(page.url()) && !page.isDone()) {
+				previous.put(page.url().toString(), page);
+				schedule(page.url(), page.depth());
+			}
+		}
+	}
+
+	/**
+	 * Crawls every URL in the state replayed from a log again, along with any
+	 * new URLs they link to. Pages are requested conditionally using the
+	 * validators recorded for them, so a page that has not changed is neither
+	 * downloaded nor parsed, and only the postings of changed pages are
+	 * replaced in the index. The index should already hold the words replayed
+	 * from the log.
+	 *
+	 * @param state
+	 *            state replayed from the crawl log
+	 *
+	 * @see CrawlLog#replay(java.nio.file.Path, InvertedIndex)
+	 */
+	public void recrawl(CrawlLog.State state) {
+		CrawlLog current = log;
+		if (current != null) {
+			current.recrawl();
+		}
+		frontier.addLimit(state.limit());
+		for (CrawlLog.Page page : state.pages().values()) {
+			if (frontier.admit(page.url())) {
+				previous.put(page.url().toString(), page);
+				schedule(page.url(), page.depth());
+			}
+		}
+	}
+
+	/**
+	 * Records crawl progress to a log, so that an interrupted crawl can be
+	 * resumed. Should be set before the crawl starts.
+	 *
+	 * @param log
+	 *            log to append to, or null to stop logging
+	 */
+	public void setLog(CrawlLog log) {
+		this.log = log;
+	}
+
+	/**
+	 * Sets how politely each host is crawled.
+	 *
+	 * @param delay
+	 *            minimum time in milliseconds between requests to one host
+	 * @param hostLimit
+	 *            maximum number of concurrent requests to one host
+	 */
+	public void setPoliteness(long delay, int hostLimit) {
+		scheduler.setPoliteness(delay, hostLimit);
+	}
+
+	/**
+	 * Skips pages that duplicate a page already crawled under another URL.
+	 * Exact duplicates are dropped before they are parsed, and near duplicates
+	 * before they are added to the index.
+	 *
+	 * @param duplicates
+	 *            detector to use, or null to index every page
+	 */
+	public void setDuplicateDetector(DuplicateDetector duplicates) {
+		this.duplicates = duplicates;
+	}
+
+	/**
+	 * Returns the detector used to skip duplicate pages.
+	 *
+	 * @return duplicate detector, or null if every page is indexed
+	 */
+	public DuplicateDetector getDuplicateDetector() {
+		return duplicates;
+	}
+
+	/**
+	 * Waits until every URL found so far has been fetched, parsed, and added
+	 * to the index.
+	 */
+	public synchronized void finish() {
+		try {
+			while (pending > 0) {
+				this.wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
-		queue.execute(new CrawlTask(seed, threadedIndex, max, urlSet, queue));
 	}
 
-	private class CrawlTask implements Runnable {
-		URL seed;
-		ArrayList<URL> urls;
-		ThreadSafeIndex threadedIndex;
-		int max;
-		HashSet<URL> urlSet;
-		WorkQueue queue;
+	/**
+	 * Returns the stages of the crawl pipeline, in the order pages pass
+	 * through them.
+	 *
+	 * @return fetch, parse, tokenize, and index stages
+	 */
+	public List<CrawlStage> stages() {
+		return Arrays.asList(fetchStage, parseStage, tokenizeStage, indexStage);
+	}
+
+	/**
+	 * Stops the threads of every stage. Any unfinished URLs will not be
+	 * crawled.
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+		for (CrawlStage stage : stages()) {
+			stage.shutdown();
+		}
+	}
+
+	/**
+	 * Schedules a URL to be fetched once its host is available.
+	 *
+	 * @param url
+	 *            URL to fetch
+	 * @param depth
+	 *            number of links followed from the seed to find the URL
+	 */
+	private void submit(URL url, int depth) {
+		CrawlLog current = log;
+		if (current != null) {
+			current.found(url, depth);
+		}
+		schedule(url, depth);
+	}
+
+	/**
+	 * Schedules a URL that is already recorded in the log to be fetched.
+	 *
+	 * @param url
+	 *            URL to fetch
+	 * @param depth
+	 *            number of links followed from the seed to find the URL
+	 */
+	private void schedule(URL url, int depth) {
+		synchronized (this) {
+			pending++;
+		}
+		scheduler.add(url.getHost(), depth, new FetchTask(url, depth));
+	}
 
-		private CrawlTask(URL seed, ThreadSafeIndex threadedIndex, int max, HashSet<URL> urlSet, WorkQueue queue) {
+	/**
+	 * Marks a URL as fully processed.
+	 */
+	private synchronized void done() {
+		pending--;
+		if (pending == 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Marks a URL as fully processed, and records it in the log. If the URL
+	 * was crawled before and nothing is added this time, its old postings are
+	 * removed from the index.
+	 *
+	 * @param url
+	 *            URL that was crawled
+	 * @param response
+	 *            response the words came from, or null if nothing was added
+	 * @param words
+	 *            words added to the index, or null if nothing was added
+	 */
+	private void done(URL url, HTTPResponse response, String[] words) {
+		CrawlLog.Page old = previous.remove(url.toString());
+		if (words == null && old != null && old.words() != null) {
+			threadedIndex.removeAll(old.words(), url.toString());
+		}
+
+		CrawlLog current = log;
+		if (current != null) {
+			if (words == null) {
+				current.skipped(url);
+			} else {
+				current.done(url, response.header("ETag"), response.header("Last-Modified"), words);
+			}
+		}
+		done();
+	}
+
+	/**
+	 * Marks a URL that has not changed since it was last crawled as fully
+	 * processed, keeping its postings in the index.
+	 *
+	 * @param url
+	 *            URL that was crawled
+	 */
+	private void unchanged(URL url) {
+		previous.remove(url.toString());
+		CrawlLog current = log;
+		if (current != null) {
+			current.unchanged(url);
+		}
+		done();
+	}
+
+	/**
+	 * Fetches a single page, and hands it to the parse stage once there is
+	 * room.
+	 */
+	private class FetchTask implements Runnable {
+		private final URL seed;
+		private final int depth;
+
+		private FetchTask(URL seed, int depth) {
 			this.seed = seed;
-			urls = new ArrayList<>();
-			this.threadedIndex = threadedIndex;
-			this.max = max;
-			this.urlSet = urlSet;
-			this.queue = queue;
+			this.depth = depth;
 		}
 
 		@Override
 		public void run() {
+			boolean handed = false;
 			try {
-				String html = HTTPFetcher.fetchHTML(seed.toString());
-				if (html != null) {
-					synchronized (urlSet) {
-						urls = LinkParser.listLinks(seed, html);
-						for (URL link : urls) {
-							if (urlSet.size() == max) {
-								break;
-							}
-							if (!urlSet.contains(link)) {
-								urlSet.add(link);
-								queue.execute(new CrawlTask(link, threadedIndex, max, urlSet, queue));
-							}
-						}
-					}
-					String cleanedHTML = HTMLCleaner.stripHTML(html);
-					String[] words = WordParser.parseWords(cleanedHTML);
-					InvertedIndex local = new InvertedIndex();
-					local.addAll(words, seed.toString());
-					IndexBuilder.processFileList(Paths.get(seed.toString()), local);
-					threadedIndex.addAll(local);
+				handed = fetch();
+			} finally {
+				if (!handed) {
+					done(seed, null, null);
 				}
+			}
+		}
 
+		/**
+		 * Fetches the page and hands it on.
+		 *
+		 * @return true if the page was handed to the parse stage or marked as
+		 *         unchanged, false if it still needs to be marked as done
+		 */
+		private boolean fetch() {
+			CrawlLog.Page old = previous.get(seed.toString());
+			HashMap<String, String> conditions = new HashMap<>();
+			if (old != null && old.words() != null) {
+				if (old.etag() != null) {
+					conditions.put("If-None-Match", old.etag());
+				}
+				if (old.lastModified() != null) {
+					conditions.put("If-Modified-Since", old.lastModified());
+				}
+			}
+
+			HTTPResponse response = null;
+			String html = null;
+			try {
+				// non-HTML bodies are never downloaded
+				response = HTTPFetcher.fetch(seed, HTTPFetcher.HTTP.GET, conditions, HTTPResponse::isHTML);
+				if (response.code() == 304 && !conditions.isEmpty()) {
+					unchanged(seed);
+					return true;
+				}
+				if (response.isHTML()) {
+					html = response.text();
+				}
 			} catch (UnknownHostException e) {
-				System.out.println("UnknownHostException in CrawlTask.run()");
+				System.out.println("UnknownHostException in FetchTask.run()");
 			} catch (MalformedURLException e) {
-				System.out.println("MalformedURLException in CrawlTask.run()");
+				System.out.println("MalformedURLException in FetchTask.run()");
 			} catch (IOException e) {
-				System.out.println("IOException in CrawlTask.run()");
+				System.out.println("IOException in FetchTask.run()");
+			}
+
+			if (response == null && old != null) {
+				// keeps the old postings rather than dropping a page that could
+				// not be reached this time
+				unchanged(seed);
+				return true;
+			}
+
+			DuplicateDetector detector = duplicates;
+			if (html == null || (detector != null && detector.isExactDuplicate(html))) {
+				return false;
 			}
 
+			// blocks this fetch thread while the parsers are behind
+			parseStage.execute(new ParseTask(seed, depth, response, html));
+			return true;
 		}
+	}
 
+	/**
+	 * Parses the links and text of a fetched page, adds new links to the
+	 * frontier, and hands the text to the tokenize stage.
+	 */
+	private class ParseTask implements Runnable {
+		private final URL seed;
+		private final int depth;
+		private final HTTPResponse response;
+		private final String html;
+
+		private ParseTask(URL seed, int depth, HTTPResponse response, String html) {
+			this.seed = seed;
+			this.depth = depth;
+			this.response = response;
+			this.html = html;
+		}
+
+		@Override
+		public void run() {
+			boolean handed = false;
+			try {
+				PageParser page = new PageParser(seed, html);
+				for (URL link : page.links()) {
+					if (frontier.admit(link)) {
+						submit(link, depth + 1);
+					}
+				}
+				tokenizeStage.execute(new TokenizeTask(seed, response, page.text()));
+				handed = true;
+			} finally {
+				if (!handed) {
+					done(seed, null, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits the text of a page into words, skips near duplicates, and builds
+	 * a local index of the page for the index stage.
+	 */
+	private class TokenizeTask implements Runnable {
+		private final URL seed;
+		private final HTTPResponse response;
+		private final String text;
+
+		private TokenizeTask(URL seed, HTTPResponse response, String text) {
+			this.seed = seed;
+			this.response = response;
+			this.text = text;
+		}
+
+		@Override
+		public void run() {
+			boolean handed = false;
+			try {
+				String[] words = WordParser.parseWords(text);
+				DuplicateDetector detector = duplicates;
+				if (detector == null || !detector.isNearDuplicate(words)) {
+					InvertedIndex local = null;
+					CrawlLog.Page old = previous.get(seed.toString());
+					if (old == null || !Arrays.equals(old.words(), words)) {
+						local = new InvertedIndex(threadedIndex.storesPositions());
+						local.addAll(words, seed.toString());
+					}
+					indexStage.execute(new IndexTask(seed, response, words, local));
+					handed = true;
+				}
+			} finally {
+				if (!handed) {
+					done(seed, null, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the postings of a page in the index.
+	 */
+	private class IndexTask implements Runnable {
+		private final URL seed;
+		private final HTTPResponse response;
+		private final String[] words;
+		private final InvertedIndex local;
+
+		private IndexTask(URL seed, HTTPResponse response, String[] words, InvertedIndex local) {
+			this.seed = seed;
+			this.response = response;
+			this.words = words;
+			this.local = local;
+		}
+
+		@Override
+		public void run() {
+			try {
+				// a null local index means the words have not changed
+				if (local != null) {
+					CrawlLog.Page old = previous.get(seed.toString());
+					if (old != null && old.words() != null) {
+						threadedIndex.removeAll(old.words(), seed.toString());
+					}
+					threadedIndex.addAll(local);
+				}
+			} finally {
+				done(seed, response, words);
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -1,6 +1,9 @@
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -20,6 +23,139 @@ public class WordParser {
 	 */
 	public static final Pattern CLEAN_REGEX = Pattern.compile("(?U)[^\\p{Alpha}\\p{Space}]+");
 
+	/**
+	 * Analyzer chain applied to every parsed word. Empty by default, so words
+	 * are only cleaned and split.
+	 */
+	private static volatile TermFilter[] filters = new TermFilter[0];
+
+	/**
+	 * Word to show for each term indexed while the analyzer chain is active,
+	 * so terms such as stems can be shown to users as words. Only filled in
+	 * when there are filters.
+	 */
+	private static final ConcurrentHashMap<String, String> surfaces = new ConcurrentHashMap<>();
+
+	/**
+	 * Sets the analyzer chain applied to every word returned by
+	 * {@link #parseWords(String)}. The same chain is used when building the
+	 * index and when parsing queries, so it should be set before either
+	 * starts.
+	 *
+	 * @param chain
+	 *            filters to apply, in order
+	 */
+	public static void setFilters(TermFilter... chain) {
+		filters = chain.clone();
+		surfaces.clear();
+	}
+
+	/**
+	 * Returns a word that was indexed as the term, for showing the term to
+	 * users. When the analyzer chain changes words, such as by stemming, this
+	 * is the term itself if it was ever indexed unchanged, and otherwise the
+	 * shortest word seen for it.
+	 *
+	 * @param term
+	 *            indexed term
+	 * @return word indexed as the term, or the term itself
+	 */
+	public static String surface(String term) {
+		if (surfaces.isEmpty()) {
+			return term;
+		}
+		return surfaces.getOrDefault(term, term);
+	}
+
+	/**
+	 * Applies the analyzer chain to the words. Words dropped by any filter are
+	 * removed from the result.
+	 *
+	 * @param words
+	 *            cleaned words
+	 * @return filtered words, or the original array if there are no filters
+	 */
+	public static String[] filter(String[] words) {
+		return filter(words, false);
+	}
+
+	/**
+	 * Applies the analyzer chain to the words, optionally interning each term
+	 * and remembering the word it came from.
+	 *
+	 * @param words
+	 *            cleaned words
+	 * @param index
+	 *            true if the words are being indexed
+	 * @return filtered words, or the original array if there are no filters
+	 * @see #surface(String)
+	 */
+	private static String[] filter(String[] words, boolean index) {
+		TermFilter[] chain = filters;
+		if (chain.length == 0) {
+			return words;
+		}
+
+		int count = 0;
+		for (String word : words) {
+			String term = word;
+			for (int i = 0; i < chain.length && term != null; i++) {
+				term = chain[i].filter(term);
+			}
+			if (term != null) {
+				if (index) {
+					// filters such as stemming may return new strings
+					term = TermInterner.intern(term);
+					remember(term, word);
+				}
+				words[count++] = term;
+			}
+		}
+		return count == words.length ? words : Arrays.copyOf(words, count);
+	}
+
+	/**
+	 * Remembers the word a term was indexed from, if it should be shown
+	 * instead of any seen before. Every term is recorded, including terms left
+	 * unchanged, so a term indexed as itself is shown as itself no matter
+	 * which of its words came first. Once a term is shown as itself, further
+	 * words cost only a lookup.
+	 *
+	 * @param term
+	 *            indexed term
+	 * @param word
+	 *            word the term came from
+	 */
+	private static void remember(String term, String word) {
+		String current = surfaces.get(term);
+		if (current == null || better(term, word, current)) {
+			surfaces.merge(term, word, (old, candidate) -> better(term, candidate, old) ? candidate : old);
+		}
+	}
+
+	/**
+	 * Checks if one word should be shown for a term instead of another. The
+	 * term itself comes first, then shorter words, then words that come
+	 * first alphabetically.
+	 *
+	 * @param term
+	 *            indexed term
+	 * @param a
+	 *            first word
+	 * @param b
+	 *            second word
+	 * @return true if the first word should be shown instead of the second
+	 */
+	private static boolean better(String term, String a, String b) {
+		if (a.equals(b) || b.equals(term)) {
+			return false;
+		}
+		if (a.equals(term)) {
+			return true;
+		}
+		return a.length() != b.length() ? a.length() < b.length() : a.compareTo(b) < 0;
+	}
+
 	/**
 	 * Cleans the text by removing all non-alphabetic and non-whitespace
 	 * characters, and converting the remaining text to lowercase. The remaining
@@ -39,21 +175,70 @@ public class WordParser {
 	}
 
 	/**
-	 * Splits the text into words by one or more whitespace.
+	 * Splits the text into words by one or more whitespace. Each word is
+	 * returned as its canonical {@link TermInterner} instance, so repeated
+	 * words do not allocate new strings.
 	 *
 	 * @param text
 	 *            text to be split into words
 	 * @return array of words
 	 *
 	 * @see #SPLIT_REGEX
+	 * @see TermInterner#intern(CharSequence, int, int)
 	 */
 	public static String[] split(String text) {
-		text = text.trim();
-		return text.isEmpty() ? new String[0] : SPLIT_REGEX.split(text);
+		return split(text, true);
 	}
 
 	/**
-	 * Convenience method for cleaning and splitting text.
+	 * Splits the text into words by one or more whitespace.
+	 *
+	 * @param text
+	 *            text to be split into words
+	 * @param intern
+	 *            true to return the canonical instance of each word, false to
+	 *            return new strings and leave the shared table untouched
+	 * @return array of words
+	 */
+	private static String[] split(String text, boolean intern) {
+		ArrayList<String> words = new ArrayList<>();
+		int length = text.length();
+		int start = -1;
+
+		for (int i = 0; i < length; i++) {
+			if (isSpace(text.charAt(i))) {
+				if (start >= 0) {
+					words.add(intern ? TermInterner.intern(text, start, i) : text.substring(start, i));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+
+		if (start >= 0) {
+			words.add(intern ? TermInterner.intern(text, start, length) : text.substring(start, length));
+		}
+
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * Checks if the character is whitespace, using the same definition as
+	 * {@link #SPLIT_REGEX}.
+	 *
+	 * @param c
+	 *            character to check
+	 * @return true if the character is whitespace
+	 */
+	private static boolean isSpace(char c) {
+		return Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '\u0085';
+	}
+
+	/**
+	 * Convenience method for cleaning, splitting, and filtering text to be
+	 * indexed. Every word returned is its canonical {@link TermInterner}
+	 * instance.
 	 *
 	 * @param text
 	 *            to clean and split
@@ -61,9 +246,24 @@ public class WordParser {
 	 *
 	 * @see #split(String)
 	 * @see #clean(String)
+	 * @see #filter(String[])
 	 */
 	public static String[] parseWords(String text) {
-		return split(clean(text));
+		return filter(split(clean(text)), true);
+	}
+
+	/**
+	 * Cleans, splits, and filters a query the same way as
+	 * {@link #parseWords(String)}, but without interning the words. Queries
+	 * may come from anyone, and interning every word searched for would let
+	 * the shared table grow without limit.
+	 *
+	 * @param text
+	 *            query to clean and split
+	 * @return cleaned array of words
+	 */
+	public static String[] parseQuery(String text) {
+		return filter(split(clean(text), false));
 	}
 
 	/**
@@ -1,15 +1,71 @@
-import java.util.LinkedList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A simple work queue implementation based on the IBM developerWorks article by
- * Brian Goetz. It is up to the user of this class to keep track of whether
- * there is any pending work remaining.
+ * A work-stealing work queue. Each worker thread keeps its own deque of work,
+ * and work added from outside the pool goes to a shared injection queue. A
+ * worker runs the newest work it added itself first, then work from the
+ * injection queue, and only then steals the oldest work from another worker,
+ * so workers rarely contend with each other and never on a single lock.
+ * Workers with nothing to do park until work is added.
+ *
+ * Work is added with a {@link Priority}. Workers choose between the classes
+ * in proportion to their weights, so interactive work is run ahead of work
+ * already waiting in the batch and background classes, but those classes
+ * still get a share of the workers and are never starved. Work added by a
+ * worker has the priority of the work it is running.
+ *
+ * The queue keeps metrics that show whether the workers are saturated or
+ * starved: how much work is waiting, how many requests were added and
+ * finished, histograms of how long each class of work waited and ran, and
+ * how much of its time each worker spent running work.
+ *
+ * Work may be submitted for a {@link CompletableFuture} of its result, and a
+ * {@link TaskGroup} tracks a set of related work so that it can be waited on
+ * without waiting for everything else in the queue.
+ *
+ * A queue may also be adaptive, growing and shrinking the number of workers
+ * taking work between a minimum and a maximum. Every half second it measures
+ * throughput, how much work is waiting, and how much of the time workers spent
+ * running work was spent blocked rather than on a CPU. It then moves towards
+ * the number of workers that keeps every core busy, backing off from any step
+ * that lowered throughput, so that I/O-bound work gets more workers than
+ * CPU-bound work without tuning for each machine. Workers above the current
+ * size stay parked until they are needed.
+ *
+ * A queue may also be given a capacity, which limits how much work of each
+ * class can wait to be run. When a class is full, a {@link Policy} decides
+ * whether the producer blocks, runs the work itself, or has it rejected, so
+ * that memory stays flat no matter how much input a producer has. Since each
+ * class has its own capacity, a flood of background work never blocks an
+ * interactive producer.
+ *
+ * Originally based on the simple work queue from the IBM developerWorks
+ * article by Brian Goetz. It is up to the user of this class to keep track of
+ * whether there is any pending work remaining.
  *
  * @see <a href=
  *      "http://www.ibm.com/developerworks/library/j-jtp0730/index.html">Java
  *      Theory and Practice: Thread Pools and Work Queues</a>
+ * @see <a href="https://doi.org/10.1145/324133.324234">Scheduling
+ *      Multithreaded Computations by Work Stealing</a>
  */
-public class WorkQueue {
+public class WorkQueue implements Executor {
 
 	/**
 	 * Pool of worker threads that will wait in the background until work is
@@ -17,8 +73,8 @@ public class WorkQueue {
 	 */
 	private final PoolWorker[] workers;
 
-	/** Queue of pending work requests. */
-	private final LinkedList<Runnable> queue;
+	/** Work added by threads outside of the pool, one queue per priority. */
+	private final ConcurrentLinkedQueue<Work>[] injected;
 
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
@@ -26,7 +82,114 @@ public class WorkQueue {
 	/** The default number of threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
-	private int pending;
+	/** The most threads an adaptive queue grows to when not specified. */
+	public static final int DEFAULT_MAXIMUM = 64;
+
+	/** A capacity that keeps every worker busy without buffering much input. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * What happens when work is added to a full queue.
+	 */
+	public static enum Policy {
+		/** The producer waits until there is room. */
+		BLOCK,
+		/** The producer runs the work itself. */
+		CALLER_RUNS,
+		/** A {@link RejectedExecutionException} is thrown. */
+		REJECT
+	};
+
+	/**
+	 * Classes of work, from most to least urgent. A worker picks each class in
+	 * proportion to its weight when every class has work waiting.
+	 */
+	public static enum Priority {
+		/** Work someone is waiting on, such as a search from the web page. */
+		INTERACTIVE(8),
+		/** Bulk work whose total time matters, such as a query file. */
+		BATCH(3),
+		/** Work that can wait, such as building the index. */
+		BACKGROUND(1);
+
+		private final int weight;
+
+		private Priority(int weight) {
+			this.weight = weight;
+		}
+
+		/**
+		 * Returns the share of workers this class gets relative to the others
+		 * when every class has work waiting.
+		 *
+		 * @return weight
+		 */
+		public int weight() {
+			return weight;
+		}
+	};
+
+	/** The priority classes, in order of urgency. */
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	/**
+	 * The class each turn of a worker looks at first, spread out so that each
+	 * class comes up as often as its weight and no class waits a whole cycle.
+	 */
+	private static final Priority[] SCHEDULE = schedule();
+
+	/** Free room for each class, or null if the queue is unbounded. */
+	private final Semaphore[] slots;
+
+	/** What happens when work is added to a full queue. */
+	private final Policy policy;
+
+	/** Number of work requests added, striped across threads. */
+	private final LongAdder submitted;
+
+	/** Number of work requests finished, striped across threads. */
+	private final LongAdder completed;
+
+	/** Wait and run time metrics for each class. */
+	private final Metrics[] metrics;
+
+	/** When the workers were started, for busy ratios. */
+	private final long started;
+
+	/** Guards parking idle workers and waiting for all work to finish. */
+	private final ReentrantLock lock;
+	private final Condition available;
+	private final Condition finished;
+
+	/** Number of workers parked or about to park. */
+	private final AtomicInteger idle;
+
+	/** Number of threads waiting in {@link #finish()}, changed under the lock. */
+	private volatile int finishers;
+
+	/** Number of times an idle worker yields before parking. */
+	private static final int SPINS = 4;
+
+	/** Number of workers waiting on the available condition. */
+	private int parked;
+
+	/** Number of parked workers signalled but not yet awake. */
+	private int waking;
+
+	/** Signalled when the number of workers taking work grows. */
+	private final Condition resized;
+
+	/** Fewest workers an adaptive queue shrinks to. */
+	private final int minimum;
+
+	/** Number of workers taking work; the rest stay parked. */
+	private volatile int target;
+
+	/** Adjusts the size of an adaptive queue, or null if it is fixed. */
+	private final Timer controller;
+
+	/** Time between adjustments of an adaptive queue in milliseconds. */
+	public static final long ADJUST_INTERVAL = 500;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -44,46 +207,229 @@ public class WorkQueue {
 	 *            number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.queue = new LinkedList<Runnable>();
+		this(threads, 0, Policy.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue that holds a limited amount of waiting work.
+	 *
+	 * @param threads
+	 *            number of worker threads; should be greater than 1
+	 * @param capacity
+	 *            maximum number of work requests waiting to be run, or 0 for
+	 *            no limit
+	 * @param policy
+	 *            what happens when work is added to a full queue
+	 */
+	public WorkQueue(int threads, int capacity, Policy policy) {
+		this(threads, threads, capacity, policy);
+	}
+
+	/**
+	 * Starts a work queue that adapts its number of workers to the work, or
+	 * has a fixed number if the minimum and maximum are the same.
+	 *
+	 * @param minimum
+	 *            fewest worker threads taking work
+	 * @param maximum
+	 *            most worker threads taking work
+	 * @param capacity
+	 *            maximum number of work requests waiting to be run, or 0 for
+	 *            no limit
+	 * @param policy
+	 *            what happens when work is added to a full queue
+	 */
+	public WorkQueue(int minimum, int maximum, int capacity, Policy policy) {
+		int threads = Math.max(1, Math.max(minimum, maximum));
+		this.minimum = Math.max(1, Math.min(minimum, threads));
+		this.target = Math.max(this.minimum, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+		this.slots = capacity > 0 ? new Semaphore[PRIORITIES.length] : null;
+		this.policy = policy;
+		this.injected = newQueues();
+		this.metrics = new Metrics[PRIORITIES.length];
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			injected[i] = new ConcurrentLinkedQueue<>();
+			metrics[i] = new Metrics();
+			if (slots != null) {
+				slots[i] = new Semaphore(capacity);
+			}
+		}
 		this.workers = new PoolWorker[threads];
-		this.pending = 0;
+		this.submitted = new LongAdder();
+		this.completed = new LongAdder();
+		this.lock = new ReentrantLock();
+		this.available = lock.newCondition();
+		this.finished = lock.newCondition();
+		this.resized = lock.newCondition();
+		this.idle = new AtomicInteger(0);
+		this.finishers = 0;
+		this.parked = 0;
+		this.waking = 0;
 
 		this.shutdown = false;
+		this.started = System.nanoTime();
+
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new PoolWorker(i);
+		}
 
 		// start the threads so they are waiting in the background
 		for (int i = 0; i < threads; i++) {
-			workers[i] = new PoolWorker();
 			workers[i].start();
 		}
+
+		if (this.minimum < threads) {
+			this.controller = new Timer("WorkQueue", true);
+			this.controller.schedule(new Controller(), ADJUST_INTERVAL, ADJUST_INTERVAL);
+		} else {
+			this.controller = null;
+		}
 	}
 
 	/**
-	 * Adds a work request to the queue. A thread will process this request when
-	 * available.
+	 * Adds a work request to the queue. Work added by a worker of this queue
+	 * has the priority of the work that worker is running, and any other work
+	 * is {@link Priority#BATCH}.
 	 *
 	 * @param r
 	 *            work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException
+	 *             if the queue is full and its policy is to reject work
+	 * @see #execute(Runnable, Priority)
 	 */
+	@Override
 	public void execute(Runnable r) {
-		synchronized (queue) {
-			queue.addLast(r);
-			pending++;
-			queue.notifyAll();
+		PoolWorker worker = worker();
+		execute(r, worker != null ? worker.priority : Priority.BATCH);
+	}
+
+	/**
+	 * Adds a work request to the queue. A thread will process this request when
+	 * available. Work added by a worker of this queue goes to that worker's
+	 * own deque. If the class of the work is full, the policy of the queue
+	 * decides what happens, except that a worker of this queue always runs the
+	 * work itself rather than block, since every worker blocking would leave
+	 * nothing to make room.
+	 *
+	 * @param r
+	 *            work request (in the form of a {@link Runnable} object)
+	 * @param priority
+	 *            class of the work
+	 * @throws RejectedExecutionException
+	 *             if the queue is full and its policy is to reject work
+	 */
+	public void execute(Runnable r, Priority priority) {
+		PoolWorker worker = worker();
+		int p = priority.ordinal();
+
+		if (slots != null && !slots[p].tryAcquire()) {
+			if (worker != null || policy == Policy.CALLER_RUNS) {
+				runTask(r);
+				return;
+			} else if (policy == Policy.REJECT) {
+				throw new RejectedExecutionException("Work queue is full.");
+			}
+			slots[p].acquireUninterruptibly();
+		}
+
+		Work work = new Work(r, priority);
+		submitted.increment();
+		metrics[p].submitted.increment();
+		if (worker != null) {
+			worker.local[p].addFirst(work);
+		} else {
+			injected[p].offer(work);
+		}
+
+		// the work is visible before idle is read, and an idle worker always
+		// increments idle before looking for work, so no wake-up is lost
+		if (idle.get() > 0) {
+			signalWork();
 		}
 	}
 
 	/**
-	 * Waits for all pending work to be finished.
+	 * Adds a work request to the queue, returning a future of its result. If
+	 * the work throws an exception, the future completes with it instead. Work
+	 * whose future was cancelled before it started is not run. Work left
+	 * waiting when the queue is shut down is never run, and its future never
+	 * completes.
+	 *
+	 * @param task
+	 *            work request that computes a result
+	 * @param priority
+	 *            class of the work
+	 * @return future completed with the result of the work
+	 * @throws RejectedExecutionException
+	 *             if the queue is full and its policy is to reject work
 	 */
-	public void finish() {
-		synchronized (queue) {
+	public <T> CompletableFuture<T> submit(Callable<T> task, Priority priority) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		execute(completing(task, future), priority);
+		return future;
+	}
+
+	/**
+	 * Wraps work that computes a result so that running it completes a future
+	 * with that result or the exception it throws, unless the future is
+	 * already done because it was cancelled.
+	 *
+	 * @param task
+	 *            work request that computes a result
+	 * @param future
+	 *            future to complete
+	 * @return work request that completes the future
+	 */
+	static <T> Runnable completing(Callable<T> task, CompletableFuture<T> future) {
+		return () -> {
+			if (future.isDone()) {
+				return;
+			}
 			try {
-				while (pending > 0) {
-					queue.wait();
-				}
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+				future.complete(task.call());
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			}
+		};
+	}
+
+	/**
+	 * Adds a work request to the queue, returning a future that completes when
+	 * the work has run.
+	 *
+	 * @param task
+	 *            work request
+	 * @param priority
+	 *            class of the work
+	 * @return future completed when the work has run
+	 * @throws RejectedExecutionException
+	 *             if the queue is full and its policy is to reject work
+	 * @see #submit(Callable, Priority)
+	 */
+	public CompletableFuture<Void> submit(Runnable task, Priority priority) {
+		return submit(() -> {
+			task.run();
+			return null;
+		}, priority);
+	}
+
+	/**
+	 * Waits for all pending work to be finished. This includes work added by
+	 * every other user of the queue; use a {@link TaskGroup} to wait for only
+	 * some of it.
+	 */
+	public void finish() {
+		lock.lock();
+		try {
+			finishers++;
+			while (!isQuiescent()) {
+				finished.await();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			finishers--;
+			lock.unlock();
 		}
 	}
 
@@ -92,71 +438,670 @@ public class WorkQueue {
 	 * but threads in-progress will not be interrupted.
 	 */
 	public void shutdown() {
+		boolean first = !shutdown;
+
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
 
-		synchronized (queue) {
-			queue.notifyAll();
+		if (first && controller != null) {
+			controller.cancel();
+		}
+
+		// lets any blocked producers return, though their work will not run
+		if (first && slots != null) {
+			for (Semaphore free : slots) {
+				free.release(Integer.MAX_VALUE / 2);
+			}
+		}
+
+		lock.lock();
+		try {
+			available.signalAll();
+			resized.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	/**
-	 * Returns the number of worker threads being used by the work queue.
+	 * Returns the number of worker threads being used by the work queue. For
+	 * an adaptive queue, this is the number currently taking work.
 	 *
 	 * @return number of worker threads
 	 */
 	public int size() {
+		return target;
+	}
+
+	/**
+	 * Returns the most worker threads the work queue can use.
+	 *
+	 * @return number of worker threads started
+	 */
+	public int maximumSize() {
 		return workers.length;
 	}
 
 	/**
-	 * Waits until work is available in the work queue. When work is found, will
-	 * remove the work from the queue and run it. If a shutdown is detected,
-	 * will exit instead of grabbing new work from the queue. These threads will
-	 * continue running in the background until a shutdown is requested.
+	 * Changes the number of worker threads taking work, within the minimum and
+	 * maximum of the queue. Workers above the new size finish the work they
+	 * are running and then park.
+	 *
+	 * @param threads
+	 *            number of worker threads to use
+	 */
+	public void resize(int threads) {
+		int size = Math.max(minimum, Math.min(workers.length, threads));
+		int old = target;
+		target = size;
+		if (size > old) {
+			lock.lock();
+			try {
+				resized.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of work requests waiting to be run.
+	 *
+	 * @return queue depth
+	 */
+	public long depth() {
+		long depth = 0;
+		for (Priority priority : PRIORITIES) {
+			depth += waiting(priority);
+		}
+		return depth;
+	}
+
+	/**
+	 * Returns the number of work requests added to the queue, not counting work
+	 * a producer ran itself because the queue was full.
+	 *
+	 * @return submitted work requests
+	 */
+	public long submitted() {
+		return submitted.sum();
+	}
+
+	/**
+	 * Returns the number of work requests the workers have finished.
+	 *
+	 * @return completed work requests
+	 */
+	public long completed() {
+		return completed.sum();
+	}
+
+	/**
+	 * Returns the number of work requests of a class waiting to be run.
+	 *
+	 * @param priority
+	 *            class of work
+	 * @return number of waiting work requests
+	 */
+	public long waiting(Priority priority) {
+		Metrics m = metrics[priority.ordinal()];
+		long started = m.waits.count();
+		return Math.max(0, m.submitted.sum() - started);
+	}
+
+	/**
+	 * Returns how long work of a class waited in the queue before a worker
+	 * took it.
+	 *
+	 * @param priority
+	 *            class of work
+	 * @return histogram of queue waits
+	 */
+	public Histogram waitTimes(Priority priority) {
+		return metrics[priority.ordinal()].waits;
+	}
+
+	/**
+	 * Returns how long work of a class took to run once a worker took it.
+	 *
+	 * @param priority
+	 *            class of work
+	 * @return histogram of run times
+	 */
+	public Histogram runTimes(Priority priority) {
+		return metrics[priority.ordinal()].runs;
+	}
+
+	/**
+	 * Returns the fraction of time each worker has spent running work since
+	 * the queue started.
+	 *
+	 * @return busy ratio from 0 to 1 of each worker
+	 */
+	public double[] busyRatios() {
+		double elapsed = System.nanoTime() - started;
+		double[] ratios = new double[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			ratios[i] = elapsed > 0 ? Math.min(1, workers[i].busy / elapsed) : 0;
+		}
+		return ratios;
+	}
+
+	/**
+	 * Returns a report of the queue metrics, with a line for the queue, a line
+	 * for each class of work that was used, and a line of worker busy ratios.
+	 *
+	 * @return report
+	 */
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%d of %d workers, depth %d, %d submitted, %d completed, up %d s", size(),
+				workers.length, depth(), submitted(), completed(),
+				TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started)));
+
+		for (Priority priority : PRIORITIES) {
+			Metrics m = metrics[priority.ordinal()];
+			if (m.submitted.sum() > 0) {
+				report.append(String.format("%n  %-11s waiting %d%n    wait %s%n    run  %s", priority,
+						waiting(priority), m.waits, m.runs));
+			}
+		}
+
+		report.append(String.format("%n  busy"));
+		for (double ratio : busyRatios()) {
+			report.append(String.format(" %.0f%%", ratio * 100));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Returns the worker of this queue running on the current thread.
+	 *
+	 * @return worker, or null if called from outside the pool
+	 */
+	private PoolWorker worker() {
+		Thread current = Thread.currentThread();
+		if (current instanceof PoolWorker && ((PoolWorker) current).owner() == this) {
+			return (PoolWorker) current;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the array of injection queues, one per priority.
+	 *
+	 * @return array with room for one queue per priority
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ConcurrentLinkedQueue<Work>[] newQueues() {
+		return new ConcurrentLinkedQueue[PRIORITIES.length];
+	}
+
+	/**
+	 * Spreads each priority over a cycle as many times as its weight, using
+	 * smooth weighted round robin so that no class gets a long run of turns
+	 * in a row.
+	 *
+	 * @return the class to look at first on each turn of the cycle
+	 */
+	private static Priority[] schedule() {
+		int total = 0;
+		for (Priority priority : PRIORITIES) {
+			total += priority.weight();
+		}
+
+		Priority[] schedule = new Priority[total];
+		int[] current = new int[PRIORITIES.length];
+		for (int turn = 0; turn < total; turn++) {
+			int best = 0;
+			for (int i = 0; i < PRIORITIES.length; i++) {
+				current[i] += PRIORITIES[i].weight();
+				if (current[i] > current[best]) {
+					best = i;
+				}
+			}
+			current[best] -= total;
+			schedule[turn] = PRIORITIES[best];
+		}
+		return schedule;
+	}
+
+	/**
+	 * Runs a work request, catching runtime exceptions so that neither a
+	 * worker nor a producer running work itself is lost to one.
+	 *
+	 * @param r
+	 *            work request
+	 */
+	private static void runTask(Runnable r) {
+		try {
+			r.run();
+		} catch (RuntimeException ex) {
+			// catch runtime exceptions to avoid leaking threads
+			ex.printStackTrace();
+			System.err.println("Warning: Work queue encountered an " + "exception while running.");
+		}
+	}
+
+	/**
+	 * Wakes a parked worker, unless every parked worker is already being
+	 * woken. A woken worker wakes the next one if there is still more work, so
+	 * a burst of work does not wake every worker at once.
+	 */
+	private void signalWork() {
+		lock.lock();
+		try {
+			if (parked > waking) {
+				waking++;
+				available.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks whether every work request added so far has finished. Both
+	 * counters only grow and completed never passes submitted, so reading
+	 * completed before submitted can only find them equal if they really were
+	 * equal at some instant in between, even though neither sum is an atomic
+	 * snapshot.
+	 *
+	 * @return true if no work was pending at some point during the call
+	 */
+	private boolean isQuiescent() {
+		long done = completed.sum();
+		return done == submitted.sum();
+	}
+
+	/**
+	 * Runs work from the worker's own deque, the injection queue, or another
+	 * worker's deque. If a shutdown is detected, will exit instead of grabbing
+	 * new work. These threads will continue running in the background until a
+	 * shutdown is requested.
 	 */
 	private class PoolWorker extends Thread {
 
+		/** Work added by this worker, one deque per priority. */
+		private final ConcurrentLinkedDeque<Work>[] local;
+
+		/** Priority of the work this worker is running. */
+		private Priority priority;
+
+		/** Position of this worker in the schedule. */
+		private int turn;
+
+		/** Time spent running work in nanoseconds, written only by this worker. */
+		private volatile long busy;
+
+		/** Position of this worker in the pool; those at or above the size rest. */
+		private final int index;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private PoolWorker(int index) {
+			this.index = index;
+			this.local = new ConcurrentLinkedDeque[PRIORITIES.length];
+			for (int i = 0; i < PRIORITIES.length; i++) {
+				local[i] = new ConcurrentLinkedDeque<>();
+			}
+			this.priority = Priority.BATCH;
+			this.turn = 0;
+			this.busy = 0;
+		}
+
+		private WorkQueue owner() {
+			return WorkQueue.this;
+		}
+
 		@Override
 		public void run() {
-			Runnable r = null;
-
-			while (true) {
-				synchronized (queue) {
-					while (queue.isEmpty() && !shutdown) {
-						try {
-							queue.wait();
-						} catch (InterruptedException ex) {
-							System.err.println("Warning: Work queue interrupted.");
-							Thread.currentThread().interrupt();
-						}
-					}
+			while (!shutdown) {
+				if (index >= target) {
+					rest();
+					continue;
+				}
+
+				Work work = next();
+				if (work == null) {
+					work = idle();
+				}
+				if (work == null) {
+					park();
+					continue;
+				}
+
+				if (idle.get() > 0 && hasInjected()) {
+					signalWork();
+				}
+
+				priority = work.priority;
+				long start = System.nanoTime();
+				try {
+					runTask(work.task);
+				} finally {
+					long took = System.nanoTime() - start;
+					busy += took;
+					metrics[work.priority.ordinal()].runs.record(took);
+					completed.increment();
+				}
+			}
+		}
+
+		/**
+		 * Finds the next work request to run. Follows the schedule from this
+		 * worker's turn to the first class that has work, so classes with work
+		 * waiting share the workers in proportion to their weights, and a
+		 * worker never sits idle while any work waits.
+		 *
+		 * @return work request, or null if there is none anywhere
+		 */
+		private Work next() {
+			Work work = null;
+			int tried = 0;
+			for (int i = 0; i < SCHEDULE.length && work == null; i++) {
+				int p = SCHEDULE[turn].ordinal();
+				turn = (turn + 1) % SCHEDULE.length;
+				if ((tried & 1 << p) == 0) {
+					tried |= 1 << p;
+					work = next(p);
+				}
+			}
 
-					// exit while for one of two reasons:
-					// (a) queue has work, or (b) shutdown has been called
-					if (shutdown) {
-						break;
-					} else {
-						r = queue.removeFirst();
+			if (work != null) {
+				int p = work.priority.ordinal();
+				if (slots != null) {
+					slots[p].release();
+				}
+				metrics[p].waits.record(System.nanoTime() - work.added);
+			}
+			return work;
+		}
 
+		/**
+		 * Finds the next work request of one class, from this worker's own
+		 * deque, the injection queue, or another worker's deque.
+		 *
+		 * @param p
+		 *            ordinal of the priority
+		 * @return work request, or null if there is none of that class
+		 */
+		private Work next(int p) {
+			Work work = local[p].pollFirst();
+			if (work == null) {
+				work = injected[p].poll();
+			}
+			if (work == null && workers.length > 1) {
+				int start = ThreadLocalRandom.current().nextInt(workers.length);
+				for (int i = 0; i < workers.length && work == null; i++) {
+					PoolWorker victim = workers[(start + i) % workers.length];
+					if (victim != this) {
+						work = victim.local[p].pollLast();
 					}
 				}
+			}
+			return work;
+		}
 
+		/**
+		 * Wakes any threads waiting for all work to finish if there is none
+		 * left, then yields a few times looking for new work before the worker
+		 * parks, since parking and waking again costs far more than a yield.
+		 *
+		 * @return work request, or null if none turned up
+		 */
+		private Work idle() {
+			if (finishers > 0) {
+				lock.lock();
 				try {
-					r.run();
-				} catch (RuntimeException ex) {
-					// catch runtime exceptions to avoid leaking threads
-					ex.printStackTrace();
-					System.err.println("Warning: Work queue encountered an " + "exception while running.");
+					if (isQuiescent()) {
+						finished.signalAll();
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+
+			Work work = null;
+			for (int i = 0; i < SPINS && work == null && !shutdown && index < target; i++) {
+				Thread.yield();
+				work = next();
+			}
+			return work;
+		}
+
+		/**
+		 * Waits until work may be available.
+		 */
+		private void park() {
+			lock.lock();
+			try {
+				idle.incrementAndGet();
+				if (finishers > 0 && isQuiescent()) {
+					finished.signalAll();
+				}
+				while (!shutdown && !hasWork()) {
+					parked++;
+					try {
+						available.await();
+					} finally {
+						parked--;
+						if (waking > 0) {
+							waking--;
+						}
+					}
+				}
+			} catch (InterruptedException ex) {
+				System.err.println("Warning: Work queue interrupted.");
+				Thread.currentThread().interrupt();
+			} finally {
+				idle.decrementAndGet();
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Parks a worker above the current size of the queue until the queue
+		 * grows. Wakes another worker first if there is work waiting, since
+		 * this worker may have been the one woken for it, and wakes any threads
+		 * waiting for all work to finish if this worker ran the last of it.
+		 */
+		private void rest() {
+			lock.lock();
+			try {
+				if (finishers > 0 && isQuiescent()) {
+					finished.signalAll();
 				}
+				if (parked > waking && hasWork()) {
+					waking++;
+					available.signal();
+				}
+				while (!shutdown && index >= target) {
+					resized.await();
+				}
+			} catch (InterruptedException ex) {
+				System.err.println("Warning: Work queue interrupted.");
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.unlock();
+			}
+		}
 
-				synchronized (queue) {
-					pending--;
-					if (pending == 0) {
-						queue.notifyAll();
+		/**
+		 * Checks if there is any work this worker could take.
+		 *
+		 * @return true if the injection queue or any worker's deque has work
+		 */
+		private boolean hasWork() {
+			if (hasInjected()) {
+				return true;
+			}
+			for (PoolWorker worker : workers) {
+				for (ConcurrentLinkedDeque<Work> deque : worker.local) {
+					if (!deque.isEmpty()) {
+						return true;
 					}
 				}
 			}
+			return false;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Checks if any injection queue has work.
+	 *
+	 * @return true if work added from outside the pool is waiting
+	 */
+	private boolean hasInjected() {
+		for (ConcurrentLinkedQueue<Work> queue : injected) {
+			if (!queue.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adjusts the size of an adaptive queue from what it measured since the
+	 * last adjustment. The fraction of their busy time workers spent blocked
+	 * rather than on a CPU gives how many cores they keep busy. When work is
+	 * waiting and cores are left idle, the queue grows towards the size that
+	 * would fill them, at most doubling at once. When the cores are saturated
+	 * and there are more workers than cores, it tries one fewer. A step that
+	 * lowered throughput is undone, and the size is then held for a while.
+	 * When no work is waiting and the workers are mostly idle, it steps down.
+	 */
+	private class Controller extends TimerTask {
+
+		/** Number of adjustments to hold after undoing a step. */
+		private static final int HOLD = 10;
+
+		/** Drop in throughput below which a step is considered harmful. */
+		private static final double TOLERANCE = 0.95;
+
+		/** Fraction of the cores in use above which they count as saturated. */
+		private static final double SATURATED = 0.85;
+
+		private final ThreadMXBean threads;
+		private final int cores;
+
+		private long lastTime;
+		private long lastCompleted;
+		private long lastBusy;
+		private long lastCpu;
+		private double lastThroughput;
+		private int lastSize;
+		private int hold;
+
+		private Controller() {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			this.threads = bean.isThreadCpuTimeSupported() ? bean : null;
+			this.cores = Runtime.getRuntime().availableProcessors();
+			this.lastTime = System.nanoTime();
+			this.lastCompleted = 0;
+			this.lastBusy = 0;
+			this.lastCpu = cpuTime();
+			this.lastThroughput = 0;
+			this.lastSize = target;
+			this.hold = 0;
+		}
+
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			long done = completed.sum();
+			long busy = busyTime();
+			long cpu = cpuTime();
+
+			double seconds = (now - lastTime) / 1e9;
+			double throughput = (done - lastCompleted) / seconds;
+			long busyDelta = busy - lastBusy;
+			double utilization = busyDelta / (seconds * 1e9 * target);
+			double blocked = threads != null && busyDelta > 0 ? 1 - (double) (cpu - lastCpu) / busyDelta : 0;
+			blocked = Math.max(0, Math.min(1, blocked));
+
+			int size = target;
+			int next = size;
+			if (depth() == 0) {
+				if (utilization < 0.5) {
+					next = size - 1;
+				}
+			} else if (size != lastSize && throughput < lastThroughput * TOLERANCE) {
+				next = lastSize;
+				hold = HOLD;
+			} else if (hold > 0) {
+				hold--;
+			} else {
+				double used = (1 - blocked) * busyDelta / (seconds * 1e9);
+				if (used < cores * SATURATED) {
+					int ideal = (int) (size * cores * SATURATED / Math.max(used, 0.01));
+					next = Math.min(size * 2, Math.max(size + 1, ideal));
+				} else if (size > cores) {
+					next = size - 1;
+				}
+			}
+
+			lastTime = now;
+			lastCompleted = done;
+			lastBusy = busy;
+			lastCpu = cpu;
+			lastThroughput = throughput;
+			lastSize = size;
+			resize(next);
+		}
+
+		/**
+		 * Returns the total time all workers have spent running work.
+		 *
+		 * @return busy time in nanoseconds
+		 */
+		private long busyTime() {
+			long busy = 0;
+			for (PoolWorker worker : workers) {
+				busy += worker.busy;
+			}
+			return busy;
+		}
+
+		/**
+		 * Returns the total CPU time of all workers, which includes only the
+		 * time they spent running work, since they park while idle.
+		 *
+		 * @return CPU time in nanoseconds, or 0 if it cannot be measured
+		 */
+		private long cpuTime() {
+			if (threads == null) {
+				return 0;
+			}
+			long cpu = 0;
+			for (PoolWorker worker : workers) {
+				cpu += Math.max(0, threads.getThreadCpuTime(worker.getId()));
+			}
+			return cpu;
+		}
+	}
+
+	/**
+	 * A work request with its priority and the time it was added.
+	 */
+	private static class Work {
+		private final Runnable task;
+		private final Priority priority;
+		private final long added;
+
+		private Work(Runnable task, Priority priority) {
+			this.task = task;
+			this.priority = priority;
+			this.added = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Wait and run time metrics for one priority class.
+	 */
+	private static class Metrics {
+		private final LongAdder submitted = new LongAdder();
+		private final Histogram waits = new Histogram();
+		private final Histogram runs = new Histogram();
+	}
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of {@link WorkQueue} at high task rates, where the
+ * cost of handing out work dominates the work itself. Reports the median of
+ * several runs of each of three cases:
+ *
+ * <ul>
+ * <li>tiny tasks submitted from one thread outside the pool</li>
+ * <li>a binary tree of tasks, where each task submits its two children</li>
+ * <li>many rounds of a few tasks, each followed by {@link WorkQueue#finish()}</li>
+ * </ul>
+ *
+ * Usage: {@code java WorkQueueBenchmark [threads] [runs]}
+ */
+public class WorkQueueBenchmark {
+
+	/** Default number of worker threads. */
+	public static final int DEFAULT_THREADS = 8;
+
+	/** Default number of timed runs. */
+	public static final int DEFAULT_RUNS = 7;
+
+	/** Number of tiny tasks submitted from one thread. */
+	private static final int TINY_TASKS = 1 << 20;
+
+	/** Depth of the fork tree, which has 2^DEPTH leaves. */
+	private static final int DEPTH = 19;
+
+	/** Number of rounds of tasks followed by finish. */
+	private static final int ROUNDS = 2000;
+
+	/** Number of tasks in each round. */
+	private static final int ROUND_TASKS = 20;
+
+	/** Counts the tasks run, so no task can be optimized away. */
+	private static final LongAdder ran = new LongAdder();
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args
+	 *            number of worker threads and number of runs, both optional
+	 */
+	public static void main(String[] args) {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+		System.out.printf("%d workers, %d processors, median of %d runs%n", threads,
+				Runtime.getRuntime().availableProcessors(), runs);
+
+		double[] tiny = new double[runs];
+		double[] tree = new double[runs];
+		double[] rounds = new double[runs];
+		for (int r = 0; r < runs; r++) {
+			tiny[r] = tiny(threads);
+			tree[r] = tree(threads);
+			rounds[r] = rounds(threads);
+		}
+
+		System.out.printf("%d tiny tasks from one thread: %.2f Mtask/s%n", TINY_TASKS, median(tiny));
+		System.out.printf("%d-task fork tree submitted by tasks: %.2f Mtask/s%n", (2 << DEPTH) - 1, median(tree));
+		System.out.printf("%d rounds of %d tasks and finish: %.1f ms%n", ROUNDS, ROUND_TASKS, median(rounds));
+		System.out.printf("(%d tasks run)%n", ran.sum());
+	}
+
+	/**
+	 * Submits tiny tasks from this thread and waits for them.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @return throughput in millions of tasks per second
+	 */
+	private static double tiny(int threads) {
+		WorkQueue queue = new WorkQueue(threads);
+		Runnable task = ran::increment;
+		long start = System.nanoTime();
+		for (int i = 0; i < TINY_TASKS; i++) {
+			queue.execute(task);
+		}
+		queue.finish();
+		long elapsed = System.nanoTime() - start;
+		queue.shutdown();
+		return TINY_TASKS * 1e3 / elapsed;
+	}
+
+	/**
+	 * Runs a binary tree of tasks, where every task but the leaves submits
+	 * its two children to the queue it runs on.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @return throughput in millions of tasks per second
+	 */
+	private static double tree(int threads) {
+		WorkQueue queue = new WorkQueue(threads);
+		long start = System.nanoTime();
+		queue.execute(new Fork(queue, DEPTH));
+		queue.finish();
+		long elapsed = System.nanoTime() - start;
+		queue.shutdown();
+		return ((2 << DEPTH) - 1) * 1e3 / elapsed;
+	}
+
+	/**
+	 * Runs many small rounds of tasks, waiting for each round to finish.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @return total time in milliseconds
+	 */
+	private static double rounds(int threads) {
+		WorkQueue queue = new WorkQueue(threads);
+		Runnable task = ran::increment;
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int i = 0; i < ROUND_TASKS; i++) {
+				queue.execute(task);
+			}
+			queue.finish();
+		}
+		long elapsed = System.nanoTime() - start;
+		queue.shutdown();
+		return elapsed / 1e6;
+	}
+
+	/**
+	 * Returns the median of some measurements.
+	 *
+	 * @param values
+	 *            measurements to sort in place
+	 * @return median measurement
+	 */
+	private static double median(double[] values) {
+		Arrays.sort(values);
+		return values[values.length / 2];
+	}
+
+	/**
+	 * A task in the fork tree.
+	 */
+	private static class Fork implements Runnable {
+		private final WorkQueue queue;
+		private final int depth;
+
+		private Fork(WorkQueue queue, int depth) {
+			this.queue = queue;
+			this.depth = depth;
+		}
+
+		@Override
+		public void run() {
+			ran.increment();
+			if (depth > 0) {
+				queue.execute(new Fork(queue, depth - 1));
+				queue.execute(new Fork(queue, depth - 1));
+			}
+		}
+	}
+}